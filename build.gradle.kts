@@ -19,6 +19,7 @@ plugins {
     id("org.jetbrains.dokka-javadoc") version libs.versions.dokka
     id("org.ajoberstar.grgit") version libs.versions.grgit
     id("com.vanniktech.maven.publish.base") version libs.versions.maven.publish
+    id("me.champeau.jmh") version libs.versions.jmh.plugin
 }
 
 buildscript {
@@ -128,6 +129,16 @@ tasks.test {
     useJUnitPlatform()
 }
 
+// Benchmarks live in src/jmh and are run with `./gradlew jmh`, they are not part of the build.
+jmh {
+    jmhVersion = libs.versions.jmh
+}
+
+kotlin {
+    // Lets the benchmarks reach internal classes, the same way tests can.
+    target.compilations.getByName("jmh").associateWith(target.compilations.getByName("main"))
+}
+
 tasks.wrapper {
     gradleVersion = "9.3.1"
     distributionType = Wrapper.DistributionType.BIN
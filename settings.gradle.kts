@@ -20,6 +20,8 @@ fun VersionCatalogBuilder.versionRefs() {
     version("dokka", "2.1.0")
     version("grgit", "5.2.0")
     version("maven-publish", "0.32.0")
+    version("jmh", "1.37")
+    version("jmh-plugin", "0.7.3")
     version("lavalink", "4.2.0")
 
     version("logger", "2.0.7")
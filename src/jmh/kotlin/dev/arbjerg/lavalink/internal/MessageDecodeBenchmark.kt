@@ -0,0 +1,70 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.NodeOptions
+import dev.arbjerg.lavalink.protocol.v4.Message
+import dev.arbjerg.lavalink.protocol.v4.json
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares [FastMessageDecoder] with the generic [Message] decoder for the two most common websocket ops.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class MessageDecodeBenchmark {
+    private lateinit var client: LavalinkClient
+    private lateinit var node: LavalinkNode
+
+    private val playerUpdate =
+        """{"op":"playerUpdate","guildId":"1234567890123456789","state":{"time":1700000000000,"position":61234,"connected":true,"ping":42}}"""
+    private val stats =
+        """{"op":"stats","players":120,"playingPlayers":87,"uptime":123456789,"memory":{"free":123456789,"used":223456789,"allocated":423456789,"reservable":1073741824},"cpu":{"cores":8,"systemLoad":0.4231,"lavalinkLoad":0.1337},"frameStats":{"sent":6000,"nulled":10,"deficit":-3}}"""
+
+    @Setup
+    fun setup() {
+        client = LavalinkClient(1L)
+        // Only needed to create the events, nothing listens on this port.
+        node = client.addNode(
+            NodeOptions.Builder()
+                .setName("benchmark")
+                .setServerUri("http://127.0.0.1:1")
+                .setPassword("youshallnotpass")
+                .build()
+        )
+        node.ws.close()
+    }
+
+    @TearDown
+    fun tearDown() {
+        client.close()
+    }
+
+    @Benchmark
+    fun playerUpdateGeneric(blackhole: Blackhole) {
+        blackhole.consume(json.decodeFromString<Message>(playerUpdate))
+    }
+
+    @Benchmark
+    fun playerUpdateFast(blackhole: Blackhole) {
+        blackhole.consume(FastMessageDecoder.sniffOp(playerUpdate))
+        blackhole.consume(FastMessageDecoder.decodePlayerUpdate(node, playerUpdate))
+    }
+
+    @Benchmark
+    fun statsGeneric(blackhole: Blackhole) {
+        blackhole.consume(json.decodeFromString<Message>(stats))
+    }
+
+    @Benchmark
+    fun statsFast(blackhole: Blackhole) {
+        blackhole.consume(FastMessageDecoder.sniffOp(stats))
+        blackhole.consume(FastMessageDecoder.decodeStats(stats))
+    }
+}
@@ -0,0 +1,61 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.protocol.v4.LoadResult
+import dev.arbjerg.lavalink.protocol.v4.json
+import kotlinx.serialization.ExperimentalSerializationApi
+import kotlinx.serialization.json.decodeFromStream
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.ResponseBody.Companion.toResponseBody
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares decoding a load result from the response body stream with reading the body into a string first.
+ *
+ * Run with `-prof gc` to see the difference in allocations, which grows with the size of the playlist.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+open class ResponseDecodeBenchmark {
+    @Param("1", "100", "1000")
+    var tracks = 0
+
+    private lateinit var body: ByteArray
+
+    @Setup
+    fun setup() {
+        val track = { i: Int ->
+            """{"encoded":"QAAA5wMAPFJpY2sgQXN0bGV5IC0gTmV2ZXIgR29ubmEgR2l2ZSBZb3UgVXAgKE9mZmljaWFsIE11c2ljIFZpZGVvKQALUmljayBBc3RsZXkAAAAAAAM8IAALZFF3NHc5V2dYY1EAAQAraHR0cHM6Ly93d3cueW91dHViZS5jb20vd2F0Y2g/dj1kUXc0dzlXZ1hjUQEANGh0dHBzOi8vaS55dGltZy5jb20vdmkvZFF3NHc5V2dYY1EvbWF4cmVzZGVmYXVsdC5qcGcBAAxHQkFSTDkzMDAxMzUAB3lvdXR1YmUAAAAAAAAAAA==","info":{"identifier":"track$i","isSeekable":true,"author":"Rick Astley","length":212000,"isStream":false,"position":0,"title":"Rick Astley - Never Gonna Give You Up (Official Music Video)","uri":"https://www.youtube.com/watch?v=dQw4w9WgXcQ","sourceName":"youtube","artworkUrl":"https://i.ytimg.com/vi/dQw4w9WgXcQ/maxresdefault.jpg","isrc":"GBARL9300135"},"pluginInfo":{},"userData":{}}"""
+        }
+
+        body = List(tracks, track).joinToString(
+            ",",
+            """{"loadType":"playlist","data":{"info":{"name":"benchmark","selectedTrack":-1},"pluginInfo":{},"tracks":[""",
+            "]}}"
+        ).toByteArray()
+    }
+
+    @Benchmark
+    fun string(blackhole: Blackhole) {
+        val response = body.toResponseBody(JSON)
+
+        blackhole.consume(json.decodeFromString<LoadResult>(response.string()))
+    }
+
+    @OptIn(ExperimentalSerializationApi::class)
+    @Benchmark
+    fun stream(blackhole: Blackhole) {
+        val response = body.toResponseBody(JSON)
+
+        blackhole.consume(response.byteStream().use { json.decodeFromStream<LoadResult>(it) })
+    }
+
+    private companion object {
+        val JSON = "application/json".toMediaType()
+    }
+}
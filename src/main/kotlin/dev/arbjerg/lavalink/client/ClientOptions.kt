@@ -0,0 +1,114 @@
+package dev.arbjerg.lavalink.client
+
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EventBufferPolicy
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import reactor.util.concurrent.Queues
+import java.time.Duration
+
+/**
+ * Options that apply to the [LavalinkClient] as a whole, rather than to a single node.
+ */
+data class ClientOptions private constructor(
+    val eventDispatchThreads: Int,
+    val eventSinkBufferSize: Int,
+    val defaultEventBufferPolicy: EventBufferPolicy,
+    val eventBufferPolicies: Map<Class<out ClientEvent>, EventBufferPolicy>,
+    val nodeTransferConcurrency: Int,
+    val loadResultCacheSize: Int,
+    val loadResultCacheTtl: Duration
+) {
+    data class Builder(
+        private var eventDispatchThreads: Int = Runtime.getRuntime().availableProcessors(),
+        private var eventSinkBufferSize: Int = Queues.SMALL_BUFFER_SIZE,
+        private var defaultEventBufferPolicy: EventBufferPolicy = EventBufferPolicy.neverDrop(),
+        private var eventBufferPolicies: MutableMap<Class<out ClientEvent>, EventBufferPolicy> = mutableMapOf(
+            PlayerUpdateEvent::class.java to EventBufferPolicy.latestWins(1024)
+        ),
+        private var nodeTransferConcurrency: Int = 16,
+        private var loadResultCacheSize: Int = 0,
+        private var loadResultCacheTtl: Duration = Duration.ofMinutes(10)
+    ) {
+        /**
+         * Sets the amount of threads that invoke event listeners. Events for the same guild are always handled by the
+         * same thread, in the order they were received, while different guilds are handled in parallel.
+         * Set this to 0 to invoke listeners directly on the websocket thread of the node. (Default: amount of cores)
+         *
+         * @param eventDispatchThreads - amount of dispatch threads
+         */
+        fun setEventDispatchThreads(eventDispatchThreads: Int) = apply {
+            require(eventDispatchThreads >= 0) { "eventDispatchThreads must not be negative" }
+            this.eventDispatchThreads = eventDispatchThreads
+        }
+
+        /**
+         * Sets the amount of events the client and node fluxes hold for subscribers that have not requested them yet.
+         * Events that do not fit wait in the buffer of their [EventBufferPolicy]. (Default: 256)
+         *
+         * @param eventSinkBufferSize - buffer size per flux
+         */
+        fun setEventSinkBufferSize(eventSinkBufferSize: Int) = apply {
+            require(eventSinkBufferSize > 0) { "eventSinkBufferSize must be positive" }
+            this.eventSinkBufferSize = eventSinkBufferSize
+        }
+
+        /**
+         * Sets the buffer policy for events that have no policy of their own. (Default: [EventBufferPolicy.neverDrop])
+         */
+        fun setDefaultEventBufferPolicy(policy: EventBufferPolicy) = apply { this.defaultEventBufferPolicy = policy }
+
+        /**
+         * Sets the buffer policy for an event class and its subclasses, the most specific class wins.
+         * (Default: [EventBufferPolicy.latestWins] with a capacity of 1024 for [PlayerUpdateEvent])
+         *
+         * @param type - the event class
+         * @param policy - the policy for that class
+         */
+        fun setEventBufferPolicy(type: Class<out ClientEvent>, policy: EventBufferPolicy) = apply {
+            this.eventBufferPolicies[type] = policy
+        }
+
+        /**
+         * Sets the maximum amount of players that are moved at the same time when a node goes down. (Default: 16)
+         *
+         * @param nodeTransferConcurrency - maximum concurrent player transfers
+         */
+        fun setNodeTransferConcurrency(nodeTransferConcurrency: Int) = apply {
+            require(nodeTransferConcurrency > 0) { "nodeTransferConcurrency must be positive" }
+            this.nodeTransferConcurrency = nodeTransferConcurrency
+        }
+
+        /**
+         * Sets how many load results are cached, shared by all nodes. Set this to 0 to disable the cache. (Default: 0)
+         * Failed loads are never cached, and loads of the same identifier that run at the same time share one request.
+         *
+         * @param loadResultCacheSize - maximum amount of cached load results
+         */
+        fun setLoadResultCacheSize(loadResultCacheSize: Int) = apply {
+            require(loadResultCacheSize >= 0) { "loadResultCacheSize must not be negative" }
+            this.loadResultCacheSize = loadResultCacheSize
+        }
+
+        /**
+         * Sets how long load results are cached. (Default: 10 minutes)
+         *
+         * @param loadResultCacheTtl - time to live of a cached load result
+         */
+        fun setLoadResultCacheTtl(loadResultCacheTtl: Duration) = apply {
+            require(!loadResultCacheTtl.isNegative && !loadResultCacheTtl.isZero) { "loadResultCacheTtl must be positive" }
+            this.loadResultCacheTtl = loadResultCacheTtl
+        }
+
+        fun build(): ClientOptions {
+            return ClientOptions(
+                eventDispatchThreads,
+                eventSinkBufferSize,
+                defaultEventBufferPolicy,
+                eventBufferPolicies.toMap(),
+                nodeTransferConcurrency,
+                loadResultCacheSize,
+                loadResultCacheTtl
+            )
+        }
+    }
+}
@@ -1,26 +1,41 @@
 package dev.arbjerg.lavalink.client
 
 import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EventDispatchMetrics
+import dev.arbjerg.lavalink.client.event.EventEmitterMetrics
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import dev.arbjerg.lavalink.client.event.ReadyEvent
 import dev.arbjerg.lavalink.client.loadbalancing.ILoadBalancer
 import dev.arbjerg.lavalink.client.loadbalancing.VoiceRegion
 import dev.arbjerg.lavalink.client.loadbalancing.builtin.DefaultLoadBalancer
 import dev.arbjerg.lavalink.client.player.LavalinkPlayer
-import dev.arbjerg.lavalink.internal.ReconnectTask
+import dev.arbjerg.lavalink.client.player.LoadResultCacheMetrics
+import dev.arbjerg.lavalink.internal.EventDispatcher
+import dev.arbjerg.lavalink.internal.EventEmitter
+import dev.arbjerg.lavalink.internal.EventRouter
+import dev.arbjerg.lavalink.internal.LoadResultCache
+import dev.arbjerg.lavalink.internal.PlayerUpdateCoalescer
 import dev.arbjerg.lavalink.protocol.v4.VoiceState
+import okhttp3.OkHttpClient
+import org.slf4j.LoggerFactory
 import reactor.core.Disposable
 import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
 import reactor.core.publisher.Sinks
 import java.io.Closeable
 import java.time.Duration
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.CopyOnWriteArrayList
-import java.util.concurrent.Executors
-import java.util.concurrent.TimeUnit
 
 /**
  * @param userId ID of the bot for authenticating with Discord
+ * @param options Options that apply to the client as a whole, see [ClientOptions.Builder]
  */
-class LavalinkClient(val userId: Long) : Closeable, Disposable {
+class LavalinkClient @JvmOverloads constructor(
+    val userId: Long,
+    val options: ClientOptions = ClientOptions.Builder().build()
+) : Closeable, Disposable {
+    private val logger = LoggerFactory.getLogger(LavalinkClient::class.java)
     private val internalNodes = CopyOnWriteArrayList<LavalinkNode>()
     private val linkMap = ConcurrentHashMap<Long, Link>()
     private var clientOpen = true
@@ -33,9 +48,47 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
         get() = linkMap.values.toList()
 
     // Events forwarded from all nodes.
-    private val sink: Sinks.Many<ClientEvent> = Sinks.many().multicast().onBackpressureBuffer()
+    private val sink: Sinks.Many<ClientEvent> = Sinks.many().multicast().onBackpressureBuffer(options.eventSinkBufferSize, false)
     val flux: Flux<ClientEvent> = sink.asFlux()
     private val reference: Disposable = flux.subscribe()
+    private val router = EventRouter(options)
+
+    // Every node emits from its own threads, so emission into the shared sink has to be serialized.
+    private val emitter = EventEmitter(sink, "client", options, router)
+
+    /**
+     * Metrics of the emission of events from all nodes into [flux], and of the listeners registered with [on].
+     */
+    val emitterMetrics: EventEmitterMetrics
+        get() = emitter
+
+    private val playerUpdateCoalescers = CopyOnWriteArrayList<PlayerUpdateCoalescer>()
+
+    internal val eventDispatcher = EventDispatcher(options.eventDispatchThreads)
+
+    /**
+     * The http client that every node derives its own client from, so the nodes share one thread pool and one
+     * connection pool instead of creating their own.
+     */
+    internal val baseHttpClient = OkHttpClient()
+
+    /**
+     * Metrics of the stage that invokes event listeners, useful for detecting slow listeners.
+     */
+    val eventDispatchMetrics: EventDispatchMetrics
+        get() = eventDispatcher
+
+    internal val loadResultCache = if (options.loadResultCacheSize > 0) {
+        LoadResultCache(options.loadResultCacheSize, options.loadResultCacheTtl)
+    } else {
+        null
+    }
+
+    /**
+     * Metrics of the load result cache, null if it is disabled. See [ClientOptions.Builder.setLoadResultCacheSize].
+     */
+    val loadResultCacheMetrics: LoadResultCacheMetrics?
+        get() = loadResultCache
 
     /**
      * To determine the best node, we use a load balancer.
@@ -44,14 +97,6 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
     @Suppress("MemberVisibilityCanBePrivate")
     var loadBalancer: ILoadBalancer = DefaultLoadBalancer(this)
 
-    private val reconnectService = Executors.newSingleThreadScheduledExecutor {
-        Thread(it, "lavalink-reconnect-thread").apply { isDaemon = true }
-    }
-
-    init {
-        reconnectService.scheduleWithFixedDelay(ReconnectTask(this), 0, 500, TimeUnit.MILLISECONDS)
-    }
-
     /**
      * Add a node to the client.
      *
@@ -65,11 +110,48 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
         val node = LavalinkNode(nodeOptions, this)
         internalNodes.add(node)
 
-        listenForNodeEvent(node)
-
         return node
     }
 
+    /**
+     * Adds all nodes and waits until a quorum of them is ready to be used.
+     *
+     * All nodes connect at the same time, and a request is made to each of them right away so the REST connection
+     * is already open when the first player is created.
+     *
+     * @param nodeOptions the nodes to add
+     * @param quorum how many nodes have to be available before the returned [Mono] completes (Default: a majority)
+     *
+     * @return a [Mono] of the nodes that were available once the quorum was reached. Use [Mono.timeout] to stop
+     * waiting for nodes that never come up.
+     */
+    @JvmOverloads
+    fun bootstrap(nodeOptions: List<NodeOptions>, quorum: Int = nodeOptions.size / 2 + 1): Mono<List<LavalinkNode>> {
+        require(quorum in 1..nodeOptions.size) { "quorum must be between 1 and the amount of nodes" }
+
+        // Adding a node opens its websocket, which happens asynchronously.
+        val added = nodeOptions.map { addNode(it) }
+
+        added.forEach { node ->
+            // Not through the node, which refuses requests until it is ready. The info endpoint needs no session.
+            node.rest.getNodeInfo().subscribe(null) {
+                logger.debug("Could not warm up the connection to {}", node.name, it)
+            }
+        }
+
+        return Flux.merge(added.map { it.whenAvailable() })
+            .take(quorum.toLong())
+            .collectList()
+    }
+
+    private fun LavalinkNode.whenAvailable(): Mono<LavalinkNode> {
+        // Subscribe to the ready event before checking, so the node cannot become available in between.
+        return Flux.merge(
+            on<ReadyEvent>().map { this },
+            Mono.fromCallable { this.takeIf { it.available } }
+        ).next()
+    }
+
     /**
      * Remove a node by its [name].
      */
@@ -107,7 +189,10 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
     @JvmOverloads
     fun getOrCreateLink(guildId: Long, region: VoiceRegion? = null): Link {
         return linkMap.getOrPut(guildId) {
-            Link(guildId, loadBalancer.selectNode(region, guildId))
+            val node = loadBalancer.selectNode(region, guildId)
+
+            node.penalties.addPendingAssignment(guildId)
+            Link(guildId, node)
         }
     }
     /**
@@ -197,13 +282,22 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
     }
 
     internal fun transferNodes(node: LavalinkNode) {
-        linkMap.forEach { (_, link) ->
-            if (link.node == node) {
-                val voiceRegion = link.cachedPlayer?.voiceRegion
-                // The delay is used to prevent a race condition in Discord, causing close code 4006
-                link.transferNode(loadBalancer.selectNode(region = voiceRegion, link.guildId), delay = Duration.ofMillis(1000))
-            }
+        val links = linkMap.values.filter { it.node == node }
+
+        if (links.isEmpty()) {
+            return
+        }
+
+        val targets = loadBalancer.selectNodes(links.associate { it.guildId to it.cachedPlayer?.voiceRegion })
+        val transfers = links.map { link ->
+            link.prepareTransfer(targets[link.guildId] ?: loadBalancer.selectNode(link.cachedPlayer?.voiceRegion, link.guildId))
         }
+
+        Flux.fromIterable(transfers)
+            // The delay is used to prevent a race condition in Discord, causing close code 4006
+            .delaySubscription(Duration.ofMillis(1000))
+            .flatMap({ it }, options.nodeTransferConcurrency)
+            .subscribe()
     }
 
     // For the java people
@@ -215,7 +309,22 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
      * @return a [Flux] of [ClientEvent]s
      */
     fun <T : ClientEvent> on(type: Class<T>): Flux<T> {
-        return flux.ofType(type)
+        return router.subscribe(type, null)
+    }
+
+    /**
+     * Listen to events of a single guild from all nodes. Events without a guild, like [dev.arbjerg.lavalink.client.event.StatsEvent], are never emitted.
+     * Please note that uncaught exceptions will cause the listener to stop emitting events.
+     *
+     * Listeners are indexed by type and guild, so having many per-guild listeners does not slow down event delivery.
+     *
+     * @param type the [ClientEvent] to listen for
+     * @param guildId the guild to listen for
+     *
+     * @return a [Flux] of [ClientEvent]s
+     */
+    fun <T : ClientEvent> on(type: Class<T>, guildId: Long): Flux<T> {
+        return router.subscribe(type, guildId)
     }
 
     /**
@@ -225,13 +334,48 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
      */
     inline fun <reified T : ClientEvent> on() = on(T::class.java)
 
+    /**
+     * Listen to events of a single guild from all nodes. Please note that uncaught exceptions will cause the listener to stop emitting events.
+     *
+     * @return a [Flux] of [ClientEvent]s
+     */
+    inline fun <reified T : ClientEvent> on(guildId: Long) = on(T::class.java, guildId)
+
+    /**
+     * A latest-wins view of the [PlayerUpdateEvent]s from all nodes. Every [tick], the most recent update of each guild
+     * that was updated since the previous tick is emitted, older updates of that guild are skipped.
+     *
+     * Useful when only the current position and connection state matter, like for dashboards.
+     *
+     * @param tick How often to emit the latest updates
+     *
+     * @return a [Flux] of the latest [PlayerUpdateEvent] per guild
+     */
+    fun coalescedPlayerUpdates(tick: Duration): Flux<PlayerUpdateEvent> {
+        return Flux.defer {
+            val coalescer = PlayerUpdateCoalescer()
+            playerUpdateCoalescers.add(coalescer)
+
+            Flux.interval(tick, tick)
+                .onBackpressureDrop()
+                .concatMapIterable { coalescer.drain() }
+                .doFinally { playerUpdateCoalescers.remove(coalescer) }
+        }
+    }
+
+    internal fun onPlayerUpdate(event: PlayerUpdateEvent) {
+        playerUpdateCoalescers.forEach { it.offer(event) }
+    }
+
     /**
      * Close the client and disconnect all nodes.
      */
     override fun close() {
         clientOpen = false
-        reconnectService.shutdownNow()
         nodes.forEach { it.close() }
+        baseHttpClient.dispatcher.executorService.shutdown()
+        baseHttpClient.connectionPool.evictAll()
+        eventDispatcher.close()
         reference.dispose()
     }
 
@@ -243,15 +387,9 @@ class LavalinkClient(val userId: Long) : Closeable, Disposable {
         linkMap.remove(guildId)
     }
 
-    private fun listenForNodeEvent(node: LavalinkNode) {
-        node.on<ClientEvent>()
-            .subscribe {
-                try {
-                    sink.tryEmitNext(it)
-                } catch (e: Exception) {
-                    sink.emitError(e, Sinks.EmitFailureHandler.FAIL_FAST)
-                }
-            }
+    internal fun routeEvent(event: ClientEvent) {
+        emitter.emit(event)
+        router.route(event)
     }
 
     private fun VoiceState?.isEmpty(): Boolean {
@@ -1,13 +1,19 @@
 package dev.arbjerg.lavalink.client
 
 import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EmittedEvent
+import dev.arbjerg.lavalink.client.event.EventEmitterMetrics
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
 import dev.arbjerg.lavalink.client.event.ResumeSynchronizationEvent
 import dev.arbjerg.lavalink.client.http.HttpBuilder
+import dev.arbjerg.lavalink.client.http.RequestLane
+import dev.arbjerg.lavalink.client.http.RestDispatchMetrics
 import dev.arbjerg.lavalink.client.player.*
 import dev.arbjerg.lavalink.client.player.Track
 import dev.arbjerg.lavalink.client.player.toCustom
 import dev.arbjerg.lavalink.internal.*
 import dev.arbjerg.lavalink.internal.error.RestException
+import dev.arbjerg.lavalink.internal.loadbalancing.LatencyTracker
 import dev.arbjerg.lavalink.internal.loadbalancing.Penalties
 import dev.arbjerg.lavalink.internal.toLavalinkPlayer
 import dev.arbjerg.lavalink.protocol.v4.*
@@ -16,6 +22,7 @@ import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.json.decodeFromStream
 import kotlinx.serialization.serializer
 import okhttp3.Call
+import okhttp3.Dispatcher
 import okhttp3.OkHttpClient
 import okhttp3.Response
 import org.slf4j.LoggerFactory
@@ -54,23 +61,91 @@ class LavalinkNode(
     var sessionId: String? = nodeOptions.sessionId
         internal set
 
-    internal val httpClient = OkHttpClient.Builder()
+    internal val restDispatcher = RestDispatcher(nodeOptions.maxConcurrentRequests, nodeOptions.requestLaneLimits)
+
+    /**
+     * Metrics of the queue that REST requests to this node wait in.
+     */
+    val restDispatchMetrics: RestDispatchMetrics
+        get() = restDispatcher
+
+    // The executor and connection pool are shared with the other nodes unless the options provide them.
+    internal val httpClient = lavalink.baseHttpClient.newBuilder()
         .callTimeout(nodeOptions.httpTimeout, TimeUnit.MILLISECONDS)
+        .dispatcher(Dispatcher(nodeOptions.httpExecutor ?: lavalink.baseHttpClient.dispatcher.executorService).apply {
+            // Requests are already limited by the rest dispatcher, one extra slot is left for the websocket handshake.
+            maxRequests = nodeOptions.maxConcurrentRequests + 1
+            maxRequestsPerHost = nodeOptions.maxConcurrentRequests + 1
+        })
+        .apply { nodeOptions.connectionPool?.let { connectionPool(it) } }
         .apply { nodeOptions.httpInterceptors.forEach { addInterceptor(it) } }
         .build()
 
-    internal val sink: Many<ClientEvent> = Sinks.many().multicast().onBackpressureBuffer()
+    internal val sink: Many<ClientEvent> = Sinks.many().multicast().onBackpressureBuffer(lavalink.options.eventSinkBufferSize, false)
     val flux: Flux<ClientEvent> = sink.asFlux()
     private val reference: Disposable = flux.subscribe()
+    private val router = EventRouter(lavalink.options)
+
+    // Multiple dispatch threads may emit at once.
+    private val emitter = EventEmitter(sink, "node $name", lavalink.options, router)
+
+    /**
+     * Metrics of the emission of events into [flux], and of the listeners registered with [on].
+     */
+    val emitterMetrics: EventEmitterMetrics
+        get() = emitter
 
     internal val rest = LavalinkRestClient(this)
-    val ws = LavalinkSocket(this)
+    internal val playerUpdateMerger = if (nodeOptions.playerUpdateCoalescingWindow > 0) {
+        PlayerUpdateMerger(rest, nodeOptions.playerUpdateCoalescingWindow)
+    } else {
+        null
+    }
+    private val decodeTrackBatcher = if (nodeOptions.decodeTrackBatchWindow > 0) {
+        DecodeTrackBatcher(rest, nodeOptions.decodeTrackBatchWindow, nodeOptions.decodeTrackBatchSize)
+    } else {
+        null
+    }
+    private val replayScheduler = PlayerReplayScheduler(this, nodeOptions.playerReplayConcurrency, nodeOptions.playerReplayRate)
 
-    // Stuff for load balancing
+    // Everything the socket reports to is created before it, as it may already report a failed connection or its
+    // handshake while the node is being constructed. A later initializer would overwrite what it reported.
     val penalties = Penalties(this)
+
+    // Stuff for load balancing
     var stats: Stats? = null
-        internal set
+        internal set(value) {
+            field = value
+            penalties.invalidate()
+        }
     var available: Boolean = false
+        internal set(value) {
+            field = value
+            penalties.invalidate()
+        }
+
+    internal val restLatency = LatencyTracker()
+
+    /**
+     * The moving average of how long REST calls to this node take, in milliseconds. This is measured from sending the
+     * request until the response headers arrived, so time spent waiting in the client's own request queue is not
+     * included. Loading items is not included either, as that mostly depends on the source. Calls that timed out
+     * count as taking the whole timeout, other failed calls are ignored. -1 until the first call completed.
+     */
+    val restLatencyMillis: Long
+        get() = nanosToMillis(restLatency.averageNanos())
+
+    /**
+     * The 99th percentile of how long recent REST calls to this node took, in milliseconds. -1 until the first call completed.
+     */
+    val restTailLatencyMillis: Long
+        get() = nanosToMillis(restLatency.tailNanos())
+
+    /**
+     * How long the last websocket handshake with this node took, in milliseconds, including setting up TLS.
+     * This is only measured once per connection, so it is not a round trip time. -1 until the node connected.
+     */
+    var websocketLatencyMillis: Long = -1
         internal set
 
     // TODO: Maybe it would make sense to add some node state enums like the links have.
@@ -82,16 +157,22 @@ class LavalinkNode(
      */
     internal val playerCache = ConcurrentHashMap<Long, LavalinkPlayer>()
 
+    val ws = LavalinkSocket(this)
+
     override fun dispose() {
         close()
     }
 
+    private fun nanosToMillis(nanos: Long) = if (nanos < 0) -1 else TimeUnit.NANOSECONDS.toMillis(nanos)
+
     override fun close() {
         available = false
+        replayScheduler.cancel()
         ws.close()
-        httpClient.dispatcher.executorService.shutdown()
-        httpClient.connectionPool.evictAll()
-        httpClient.cache?.close()
+        // Closed first, so no waiting request starts when a cancelled one frees its slot.
+        restDispatcher.close()
+        // The executor and connection pool may be used by other nodes, only the calls of this node are stopped.
+        httpClient.dispatcher.cancelAll()
         reference.dispose()
     }
 
@@ -104,7 +185,20 @@ class LavalinkNode(
      * @return a [Flux] of [ClientEvent]s
      */
     fun <T : ClientEvent> on(type: Class<T>): Flux<T> {
-        return flux.ofType(type)
+        return router.subscribe(type, null)
+    }
+
+    /**
+     * Listen to events of a single guild from the node. Events without a guild, like [dev.arbjerg.lavalink.client.event.StatsEvent], are never emitted.
+     * Please note that uncaught exceptions will cause the listener to stop emitting events.
+     *
+     * @param type the [ClientEvent] to listen for
+     * @param guildId the guild to listen for
+     *
+     * @return a [Flux] of [ClientEvent]s
+     */
+    fun <T : ClientEvent> on(type: Class<T>, guildId: Long): Flux<T> {
+        return router.subscribe(type, guildId)
     }
 
     /**
@@ -114,6 +208,13 @@ class LavalinkNode(
      */
     inline fun <reified T : ClientEvent> on() = on(T::class.java)
 
+    /**
+     * Listen to events of a single guild from the node. Please note that uncaught exceptions will cause the listener to stop emitting events.
+     *
+     * @return a [Flux] of [ClientEvent]s
+     */
+    inline fun <reified T : ClientEvent> on(guildId: Long) = on(T::class.java, guildId)
+
     /**
      * Retrieves a list of all players from the lavalink node.
      *
@@ -128,6 +229,7 @@ class LavalinkNode(
                 it!!.forEach { player ->
                     playerCache[player.guildId] = player
                 }
+                penalties.invalidate()
             }
     }
 
@@ -159,12 +261,16 @@ class LavalinkNode(
             .doOnSuccess {
                 // Update the player internally upon retrieving it.
                 playerCache[it!!.guildId] = it
+                penalties.invalidate()
+                penalties.confirmAssignment(it.guildId)
             }
     }
 
     fun updatePlayer(guildId: Long, updateConsumer: Consumer<PlayerUpdateBuilder>): Mono<LavalinkPlayer> {
         val update = createOrUpdatePlayer(guildId)
 
+        update.coalesce = true
+
         updateConsumer.accept(update)
 
         return update
@@ -197,12 +303,37 @@ class LavalinkNode(
             }
     }
 
+    /**
+     * Hands the event to the dispatch stage of the client. Events of the same guild are emitted in order,
+     * events without a guild are ordered per node.
+     */
+    internal fun dispatchEvent(event: ClientEvent) {
+        val key = when (event) {
+            is EmittedEvent -> event.guildId
+            is PlayerUpdateEvent -> event.guildId
+            else -> name.hashCode().toLong()
+        }
+
+        lavalink.eventDispatcher.dispatch(key) { emitEvent(event) }
+    }
+
+    private fun emitEvent(event: ClientEvent) {
+        emitter.emit(event)
+        router.route(event)
+        // Client listeners are called from this dispatch thread as well, a single node level subscription in between
+        // would deliver the events of every guild one at a time.
+        lavalink.routeEvent(event)
+    }
+
     internal fun removeCachedPlayer(guildId: Long) {
         playerCache.remove(guildId)
+        penalties.invalidate()
+        penalties.confirmAssignment(guildId)
     }
 
     /**
-     * Load an item for the player.
+     * Load an item for the player. If the load result cache is enabled, see
+     * [dev.arbjerg.lavalink.client.ClientOptions.Builder.setLoadResultCacheSize], the result may come from there.
      *
      * @param identifier The identifier (E.G. youtube url) to load.
      *
@@ -211,35 +342,84 @@ class LavalinkNode(
     fun loadItem(identifier: String): Mono<LavalinkLoadResult> {
         if (!available) return Mono.error(IllegalStateException("Node is not available"))
 
-        return rest.loadItem(identifier).map { it.toLavalinkLoadResult() }
+        val cache = lavalink.loadResultCache
+        val result = cache?.load(identifier) { rest.loadItem(it) } ?: rest.loadItem(identifier)
+
+        return result.map { it.toLavalinkLoadResult() }
+    }
+
+    /**
+     * Load an item and receive its tracks while the response is still being read, so the first tracks of a large
+     * playlist are available before the rest has arrived. Tracks are only read from the response as they are requested,
+     * so a subscriber that requests slowly leaves the rest of the playlist with the node. The load result cache is not
+     * used.
+     *
+     * [NodeOptions.Builder.setHttpTimeout] does not apply while the tracks are read. Each streaming load holds a
+     * [dev.arbjerg.lavalink.client.http.RequestLane.STREAMING] slot until it completes or is cancelled, so cancel
+     * loads that are no longer needed.
+     *
+     * @param identifier The identifier (E.G. youtube url) to load.
+     *
+     * @return A [Flux] of the loaded tracks, which is empty when nothing matched and errors with a
+     * [dev.arbjerg.lavalink.client.exception.LoadFailedException] when loading failed.
+     */
+    fun loadItemStreaming(identifier: String): Flux<Track> {
+        if (!available) return Flux.error(IllegalStateException("Node is not available"))
+
+        return rest.loadItemStreaming(identifier).map { it.toCustom() }
     }
 
     /**
-     * Uses the node to decode a base64 encoded track.
+     * Uses the node to decode a base64 encoded track. With [NodeOptions.Builder.setLocalTrackDecoding] enabled, the
+     * node is only used for tracks that cannot be decoded locally. With [NodeOptions.Builder.setDecodeTrackBatchWindow]
+     * set, tracks decoded at about the same time are sent to the node in one request.
      *
      * @param encoded The base64 encoded track to decode.
      *
      * @return The decoded track.
      */
     fun decodeTrack(encoded: String): Mono<Track> {
+        if (nodeOptions.localTrackDecoding) {
+            TrackDecoder.decode(encoded)?.let { return Mono.just(it) }
+        }
+
         if (!available) return Mono.error(IllegalStateException("Node is not available"))
 
-        return rest.decodeTrack(encoded)
-            .map { it.toCustom() }
+        val decoded = decodeTrackBatcher?.decode(encoded) ?: rest.decodeTrack(encoded)
+
+        return decoded.map { it.toCustom() }
     }
 
     /**
-     * Uses the node to decode a list of base64 encoded tracks.
+     * Uses the node to decode a list of base64 encoded tracks. With [NodeOptions.Builder.setLocalTrackDecoding]
+     * enabled, the node is only used for tracks that cannot be decoded locally.
      *
      * @param encoded The base64 encoded tracks to decode.
      *
      * @return The decoded tracks.
      */
     fun decodeTracks(encoded: List<String>): Mono<List<Track>> {
+        if (!nodeOptions.localTrackDecoding) {
+            if (!available) return Mono.error(IllegalStateException("Node is not available"))
+
+            return rest.decodeTracks(encoded)
+                .map { it.tracks.map { track -> track.toCustom() } }
+        }
+
+        val decoded = encoded.map { TrackDecoder.decode(it) }
+        val remaining = encoded.filterIndexed { index, _ -> decoded[index] == null }
+
+        if (remaining.isEmpty()) {
+            return Mono.just(decoded.map { it!! })
+        }
+
         if (!available) return Mono.error(IllegalStateException("Node is not available"))
 
-        return rest.decodeTracks(encoded)
-            .map { it.tracks.map { track -> track.toCustom() } }
+        return rest.decodeTracks(remaining).map { result ->
+            val fromNode = result.tracks.iterator()
+
+            decoded.map { it ?: fromNode.next().toCustom() }
+        }
     }
 
     /**
@@ -297,7 +477,7 @@ class LavalinkNode(
                 call.cancel()
             }
 
-            call.enqueue(object : okhttp3.Callback {
+            restDispatcher.enqueue(RequestLane.CUSTOM, call, object : okhttp3.Callback {
                 override fun onFailure(call: Call, e: IOException) {
                     sink.error(e)
                 }
@@ -437,13 +617,25 @@ class LavalinkNode(
      */
     fun getCachedPlayer(guildId: Long): LavalinkPlayer? = playerCache[guildId]
 
-    internal fun getAndRemoveCachedPlayer(guildId: Long): LavalinkPlayer? = playerCache.remove(guildId)
+    internal fun getAndRemoveCachedPlayer(guildId: Long): LavalinkPlayer? {
+        val player = playerCache.remove(guildId)
+        penalties.invalidate()
+
+        return player
+    }
 
     /**
      * @return an unmodifiable view of all cached players for this node.
      */
     fun getCachedPlayers(): Map<Long, LavalinkPlayer> = Collections.unmodifiableMap(playerCache)
 
+    /**
+     * Re-creates all cached players on the node, see [NodeOptions.Builder.setPlayerReplayRate].
+     */
+    internal fun replayCachedPlayers() {
+        replayScheduler.replay(playerCache.values.toList())
+    }
+
     internal fun transferOrphansToSelf() {
         lavalink.transferOrphansTo(this)
     }
@@ -474,12 +666,14 @@ class LavalinkNode(
                 if (link.node == this) link.state = LinkState.DISCONNECTED
             }
 
+            penalties.invalidate()
+
             ResumeSynchronizationEvent(this, failureReason = null)
         }.doOnError {
             logger.error("Failure while attempting synchronization with $this", it)
-            sink.tryEmitNext(ResumeSynchronizationEvent(this, failureReason = it))
+            dispatchEvent(ResumeSynchronizationEvent(this, failureReason = it))
         }.subscribe {
-            sink.tryEmitNext(it)
+            dispatchEvent(it)
         }
     }
 
@@ -4,6 +4,7 @@ import dev.arbjerg.lavalink.client.player.LavalinkPlayer
 import dev.arbjerg.lavalink.client.player.PlayerUpdateBuilder
 import dev.arbjerg.lavalink.protocol.v4.VoiceState
 import org.slf4j.LoggerFactory
+import reactor.core.publisher.Mono
 import java.time.Duration
 import java.util.function.Consumer
 
@@ -57,23 +58,46 @@ class Link(
      */
     fun loadItem(identifier: String) = node.loadItem(identifier)
 
+    /**
+     * Load an item for the player and receive its tracks as they are read.
+     *
+     * @param identifier The identifier (E.G. youtube url) to load.
+     *
+     * @see LavalinkNode.loadItemStreaming
+     */
+    fun loadItemStreaming(identifier: String) = node.loadItemStreaming(identifier)
+
     internal fun transferNode(newNode: LavalinkNode, delay: Duration = Duration.ZERO) {
+        prepareTransfer(newNode)
+            .delaySubscription(delay)
+            .subscribe()
+    }
+
+    /**
+     * Moves this link to [newNode] right away. The returned mono re-creates the player on the new node once subscribed
+     * and never errors, failures are logged and leave the link disconnected.
+     */
+    internal fun prepareTransfer(newNode: LavalinkNode): Mono<Void> {
         val player = node.getAndRemoveCachedPlayer(guildId)
 
-        if (player != null) {
-            state = LinkState.CONNECTING
-            newNode.createOrUpdatePlayer(guildId)
-                .applyBuilder(player.stateToBuilder())
-                .delaySubscription(delay)
-                .doOnError {
-                    state = LinkState.DISCONNECTED
-                    logger.error("Failed to transfer player to new node: ${newNode.name}", it)
-                }.subscribe()
-        } else {
+        node = newNode
+
+        if (player == null) {
             state = LinkState.DISCONNECTED
+            return Mono.empty()
         }
 
-        node = newNode
+        state = LinkState.CONNECTING
+        newNode.penalties.addPendingAssignment(guildId)
+
+        return newNode.createOrUpdatePlayer(guildId)
+            .applyBuilder(player.stateToBuilder())
+            .doOnError {
+                state = LinkState.DISCONNECTED
+                logger.error("Failed to transfer player to new node: ${newNode.name}", it)
+            }
+            .onErrorResume { Mono.empty() }
+            .then()
     }
 
     fun onVoiceServerUpdate(newVoiceState: VoiceState) {
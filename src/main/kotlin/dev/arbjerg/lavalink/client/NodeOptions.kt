@@ -1,9 +1,12 @@
 package dev.arbjerg.lavalink.client
 
+import dev.arbjerg.lavalink.client.http.RequestLane
 import dev.arbjerg.lavalink.client.loadbalancing.IRegionFilter
 import dev.arbjerg.lavalink.internal.TIMEOUT_MS
+import okhttp3.ConnectionPool
 import okhttp3.Interceptor
 import java.net.URI
+import java.util.concurrent.ExecutorService
 
 data class NodeOptions private constructor(val name: String,
                        val serverUri: URI,
@@ -11,7 +14,17 @@ data class NodeOptions private constructor(val name: String,
                        val regionFilter: IRegionFilter?,
                        val httpTimeout: Long,
                        val sessionId: String?,
-                       val httpInterceptors: List<Interceptor>) {
+                       val httpInterceptors: List<Interceptor>,
+                       val playerReplayConcurrency: Int,
+                       val playerReplayRate: Int,
+                       val localTrackDecoding: Boolean,
+                       val decodeTrackBatchWindow: Long,
+                       val decodeTrackBatchSize: Int,
+                       val playerUpdateCoalescingWindow: Long,
+                       val maxConcurrentRequests: Int,
+                       val requestLaneLimits: Map<RequestLane, Int>,
+                       val httpExecutor: ExecutorService?,
+                       val connectionPool: ConnectionPool?) {
     data class Builder(
         private var name: String? = null,
         private var serverUri: URI? = null,
@@ -19,7 +32,21 @@ data class NodeOptions private constructor(val name: String,
         private var regionFilter: IRegionFilter? = null,
         private var httpTimeout: Long = TIMEOUT_MS,
         private var sessionId: String? = null,
-        private var httpInterceptors: MutableList<Interceptor> = mutableListOf()
+        private var httpInterceptors: MutableList<Interceptor> = mutableListOf(),
+        private var playerReplayConcurrency: Int = 16,
+        private var playerReplayRate: Int = 200,
+        private var localTrackDecoding: Boolean = false,
+        private var decodeTrackBatchWindow: Long = 0,
+        private var decodeTrackBatchSize: Int = 100,
+        private var playerUpdateCoalescingWindow: Long = 0,
+        private var maxConcurrentRequests: Int = 16,
+        private var requestLaneLimits: MutableMap<RequestLane, Int> = mutableMapOf(
+            RequestLane.LOADING to 8,
+            RequestLane.STREAMING to 4,
+            RequestLane.CUSTOM to 4
+        ),
+        private var httpExecutor: ExecutorService? = null,
+        private var connectionPool: ConnectionPool? = null
     ) {
         fun setName(name: String) = apply { this.name = name }
 
@@ -72,6 +99,100 @@ data class NodeOptions private constructor(val name: String,
          */
         fun addHttpInterceptor(interceptor: Interceptor) = apply { this.httpInterceptors.add(interceptor) }
 
+        /**
+         * Sets the maximum amount of concurrent requests used to re-create cached players when the node becomes ready. (Default: 16)
+         * @param playerReplayConcurrency - maximum concurrent requests
+         */
+        fun setPlayerReplayConcurrency(playerReplayConcurrency: Int) = apply {
+            require(playerReplayConcurrency > 0) { "playerReplayConcurrency must be positive" }
+            this.playerReplayConcurrency = playerReplayConcurrency
+        }
+
+        /**
+         * Sets how many cached players may be re-created per second when the node becomes ready. (Default: 200)
+         * Playing players are re-created first, paused and idle players last.
+         * @param playerReplayRate - players per second
+         */
+        fun setPlayerReplayRate(playerReplayRate: Int) = apply {
+            require(playerReplayRate > 0) { "playerReplayRate must be positive" }
+            this.playerReplayRate = playerReplayRate
+        }
+
+        /**
+         * Sets whether [LavalinkNode.decodeTrack] and [LavalinkNode.decodeTracks] decode tracks locally instead of
+         * asking the node. Tracks that cannot be decoded locally are still sent to the node. (Default: false)
+         * Locally decoded tracks have no plugin info, see [dev.arbjerg.lavalink.client.player.TrackDecoder].
+         * @param localTrackDecoding - whether to decode tracks locally
+         */
+        fun setLocalTrackDecoding(localTrackDecoding: Boolean) = apply { this.localTrackDecoding = localTrackDecoding }
+
+        /**
+         * Sets how long [LavalinkNode.decodeTrack] waits for more tracks to decode, so they can be sent to the node
+         * in a single request. Set this to 0 to send every track on its own. (Default: 0ms)
+         * @param decodeTrackBatchWindow - time to wait in ms
+         */
+        fun setDecodeTrackBatchWindow(decodeTrackBatchWindow: Long) = apply {
+            require(decodeTrackBatchWindow >= 0) { "decodeTrackBatchWindow must not be negative" }
+            this.decodeTrackBatchWindow = decodeTrackBatchWindow
+        }
+
+        /**
+         * Sets the maximum amount of tracks that are decoded in a single request, a batch is sent right away once it
+         * is full. Only used when a batch window is set. (Default: 100)
+         * @param decodeTrackBatchSize - maximum tracks per request
+         */
+        fun setDecodeTrackBatchSize(decodeTrackBatchSize: Int) = apply {
+            require(decodeTrackBatchSize > 0) { "decodeTrackBatchSize must be positive" }
+            this.decodeTrackBatchSize = decodeTrackBatchSize
+        }
+
+        /**
+         * Sets how long [LavalinkNode.updatePlayer] waits for more updates to the same player, so they can be merged
+         * into a single request. Fields set by later updates win, and every merged caller receives the same player.
+         * Set this to 0 to send every update on its own. (Default: 0ms)
+         * @param playerUpdateCoalescingWindow - time to wait in ms
+         */
+        fun setPlayerUpdateCoalescingWindow(playerUpdateCoalescingWindow: Long) = apply {
+            require(playerUpdateCoalescingWindow >= 0) { "playerUpdateCoalescingWindow must not be negative" }
+            this.playerUpdateCoalescingWindow = playerUpdateCoalescingWindow
+        }
+
+        /**
+         * Sets the maximum amount of REST requests that run on the node at the same time, requests over this limit
+         * wait in their [RequestLane]. (Default: 16)
+         * @param maxConcurrentRequests - maximum concurrent requests
+         */
+        fun setMaxConcurrentRequests(maxConcurrentRequests: Int) = apply {
+            require(maxConcurrentRequests > 0) { "maxConcurrentRequests must be positive" }
+            this.maxConcurrentRequests = maxConcurrentRequests
+        }
+
+        /**
+         * Sets the maximum amount of concurrent REST requests for a single lane, so it cannot take every slot from
+         * the lanes with a higher priority. (Default: 8 for [RequestLane.LOADING], 4 for [RequestLane.STREAMING] and
+         * [RequestLane.CUSTOM], unlimited for the other lanes)
+         * @param lane - the lane to limit
+         * @param limit - maximum concurrent requests in the lane
+         */
+        fun setRequestLaneLimit(lane: RequestLane, limit: Int) = apply {
+            require(limit > 0) { "limit must be positive" }
+            this.requestLaneLimits[lane] = limit
+        }
+
+        /**
+         * Sets the executor that runs the node's http calls and websocket. The executor is never shut down by the
+         * client. (Default: the executor shared by all nodes of the [LavalinkClient])
+         * @param httpExecutor - executor for http calls
+         */
+        fun setHttpExecutor(httpExecutor: ExecutorService?) = apply { this.httpExecutor = httpExecutor }
+
+        /**
+         * Sets the connection pool used by the node. The pool is never cleared by the client.
+         * (Default: the connection pool shared by all nodes of the [LavalinkClient])
+         * @param connectionPool - connection pool for http calls
+         */
+        fun setConnectionPool(connectionPool: ConnectionPool?) = apply { this.connectionPool = connectionPool }
+
         fun build(): NodeOptions {
             requireNotNull(name) { "name is required" }
             requireNotNull(serverUri) { "serverUri is required" }
@@ -84,7 +205,17 @@ data class NodeOptions private constructor(val name: String,
                 regionFilter,
                 httpTimeout,
                 sessionId,
-                httpInterceptors.toList())
+                httpInterceptors.toList(),
+                playerReplayConcurrency,
+                playerReplayRate,
+                localTrackDecoding,
+                decodeTrackBatchWindow,
+                decodeTrackBatchSize,
+                playerUpdateCoalescingWindow,
+                maxConcurrentRequests,
+                requestLaneLimits.toMap(),
+                httpExecutor,
+                connectionPool)
         }
     }
 }
@@ -0,0 +1,47 @@
+package dev.arbjerg.lavalink.client.event
+
+/**
+ * Decides how many events of a class may wait to be emitted to listeners, and what happens when more arrive.
+ * Events only wait when listeners can't keep up, for example because one of them is blocking.
+ *
+ * The capacity applies to each concrete event class separately, and to every listener registered with `on()` as well as
+ * to the `flux` of the client and each node.
+ *
+ * @see dev.arbjerg.lavalink.client.ClientOptions.Builder.setEventBufferPolicy
+ */
+data class EventBufferPolicy private constructor(val capacity: Int, val overflow: Overflow) {
+    enum class Overflow {
+        /** Drop the oldest waiting event to make room for the new one */
+        DROP_OLDEST,
+        /** Drop the new event */
+        DROP_NEWEST,
+        /** Never drop events, the capacity is not enforced */
+        NEVER_DROP
+    }
+
+    companion object {
+        /**
+         * Keeps the [capacity] most recent events, useful for events that are superseded by newer ones like [PlayerUpdateEvent].
+         */
+        @JvmStatic
+        fun latestWins(capacity: Int): EventBufferPolicy {
+            require(capacity > 0) { "capacity must be positive" }
+            return EventBufferPolicy(capacity, Overflow.DROP_OLDEST)
+        }
+
+        /**
+         * Keeps the [capacity] oldest events and drops new ones until there is room.
+         */
+        @JvmStatic
+        fun dropNewest(capacity: Int): EventBufferPolicy {
+            require(capacity > 0) { "capacity must be positive" }
+            return EventBufferPolicy(capacity, Overflow.DROP_NEWEST)
+        }
+
+        /**
+         * Never drops events. Use this for events that must not be missed like [TrackEndEvent].
+         */
+        @JvmStatic
+        fun neverDrop() = EventBufferPolicy(Int.MAX_VALUE, Overflow.NEVER_DROP)
+    }
+}
@@ -0,0 +1,36 @@
+package dev.arbjerg.lavalink.client.event
+
+/**
+ * Metrics of the stage that hands events to listeners, see [dev.arbjerg.lavalink.client.ClientOptions.Builder.setEventDispatchThreads].
+ */
+interface EventDispatchMetrics {
+    /**
+     * The amount of events that are waiting to be dispatched, across all dispatch threads.
+     */
+    val queueDepth: Int
+
+    /**
+     * The amount of events that are waiting to be dispatched, per dispatch thread.
+     */
+    val queueDepths: List<Int>
+
+    /**
+     * The total amount of events that have been dispatched.
+     */
+    val dispatchedEvents: Long
+
+    /**
+     * Time in nanoseconds between the last dispatched event being received and its listeners being invoked.
+     */
+    val lastDispatchLagNanos: Long
+
+    /**
+     * The highest dispatch lag in nanoseconds since the client was created or [resetMaxDispatchLag] was called.
+     */
+    val maxDispatchLagNanos: Long
+
+    /**
+     * Resets [maxDispatchLagNanos] to 0.
+     */
+    fun resetMaxDispatchLag()
+}
@@ -0,0 +1,43 @@
+package dev.arbjerg.lavalink.client.event
+
+/**
+ * Metrics of the emission of events into a [reactor.core.publisher.Flux] of the client or a node, and of the listeners
+ * registered with `on`.
+ */
+interface EventEmitterMetrics {
+    /**
+     * The amount of events that were queued while another thread was emitting, these are emitted by that thread instead.
+     */
+    val contendedEmits: Long
+
+    /**
+     * The amount of events that could not be emitted. Every failure is also logged.
+     */
+    val failedEmits: Long
+
+    /**
+     * The amount of events waiting to be emitted, per event class.
+     *
+     * @see EventBufferPolicy
+     */
+    val bufferedEvents: Map<Class<out ClientEvent>, Int>
+
+    /**
+     * The amount of events dropped because of their [EventBufferPolicy], per event class.
+     */
+    val droppedEvents: Map<Class<out ClientEvent>, Long>
+
+    /**
+     * The amount of events waiting in the buffers of listeners registered with `on`, summed over all listeners per
+     * event class.
+     *
+     * @see EventBufferPolicy
+     */
+    val listenerBufferedEvents: Map<Class<out ClientEvent>, Int>
+
+    /**
+     * The amount of events dropped from the buffers of listeners registered with `on` because of their
+     * [EventBufferPolicy], summed over all listeners per event class. Listeners that were disposed still count.
+     */
+    val listenerDroppedEvents: Map<Class<out ClientEvent>, Long>
+}
@@ -31,6 +31,19 @@ data class ReadyEvent(override val node: LavalinkNode, val resumed: Boolean, val
  */
 data class ResumeSynchronizationEvent(override val node: LavalinkNode, val failureReason: Throwable?) : ClientEvent(node)
 
+/**
+ * Emitted while cached players are re-created on a node after a [ReadyEvent].
+ * See [dev.arbjerg.lavalink.client.NodeOptions.Builder.setPlayerReplayRate] for how fast this happens.
+ */
+data class PlayerReplayProgressEvent(override val node: LavalinkNode, val replayed: Int, val failed: Int, val total: Int)
+    : ClientEvent(node)
+
+/**
+ * Emitted when all cached players have been re-created on a node after a [ReadyEvent].
+ */
+data class PlayerReplayCompleteEvent(override val node: LavalinkNode, val replayed: Int, val failed: Int, val total: Int)
+    : ClientEvent(node)
+
 data class PlayerUpdateEvent(override val node: LavalinkNode, val guildId: Long, val state: PlayerState)
     : ClientEvent(node)
 
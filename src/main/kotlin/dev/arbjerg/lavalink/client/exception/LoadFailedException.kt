@@ -0,0 +1,8 @@
+package dev.arbjerg.lavalink.client.exception
+
+import dev.arbjerg.lavalink.client.player.TrackException
+
+/**
+ * Signals that the node failed to load an item, see [dev.arbjerg.lavalink.client.LavalinkNode.loadItemStreaming].
+ */
+class LoadFailedException(val exception: TrackException) : RuntimeException(exception.message)
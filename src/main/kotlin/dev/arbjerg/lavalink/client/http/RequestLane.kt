@@ -0,0 +1,36 @@
+package dev.arbjerg.lavalink.client.http
+
+/**
+ * The lanes that REST requests to a node are queued in, in order of priority.
+ *
+ * When a request finishes, the next request is taken from the first lane that has requests waiting and is below its
+ * limit, see [dev.arbjerg.lavalink.client.NodeOptions.Builder.setRequestLaneLimit]. A request that waited for half a
+ * second or longer goes first regardless of its lane, so lower lanes still make progress while higher ones are busy.
+ */
+enum class RequestLane {
+    /**
+     * Player updates that change the voice state, a slow voice update delays the player connecting.
+     */
+    VOICE,
+
+    /**
+     * Other player updates, fetching and destroying players, as well as session and node info requests.
+     */
+    PLAYBACK,
+
+    /**
+     * Loading and decoding tracks.
+     */
+    LOADING,
+
+    /**
+     * Loads made with [dev.arbjerg.lavalink.client.LavalinkNode.loadItemStreaming]. These hold their slot until the
+     * subscriber has received every track, so they are kept apart from other loads.
+     */
+    STREAMING,
+
+    /**
+     * Requests made with [dev.arbjerg.lavalink.client.LavalinkNode.customRequest], usually to plugins.
+     */
+    CUSTOM
+}
@@ -0,0 +1,37 @@
+package dev.arbjerg.lavalink.client.http
+
+/**
+ * Metrics of the REST request queue of a node, see [dev.arbjerg.lavalink.client.NodeOptions.Builder.setMaxConcurrentRequests].
+ */
+interface RestDispatchMetrics {
+    /**
+     * The maximum amount of requests that may be running at the same time.
+     */
+    val maxConcurrentRequests: Int
+
+    /**
+     * The amount of requests that are waiting for a free slot in the given lane.
+     */
+    fun queuedRequests(lane: RequestLane): Int
+
+    /**
+     * The amount of requests that are currently running in the given lane.
+     */
+    fun activeRequests(lane: RequestLane): Int
+
+    /**
+     * The total amount of requests that have been started in the given lane.
+     */
+    fun dispatchedRequests(lane: RequestLane): Long
+
+    /**
+     * The highest time in nanoseconds a request of the given lane spent waiting in the queue, since the node was
+     * created or [resetMaxQueueTime] was called.
+     */
+    fun maxQueueTimeNanos(lane: RequestLane): Long
+
+    /**
+     * Resets [maxQueueTimeNanos] to 0 for every lane.
+     */
+    fun resetMaxQueueTime()
+}
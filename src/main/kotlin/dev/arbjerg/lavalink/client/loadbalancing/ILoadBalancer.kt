@@ -26,6 +26,20 @@ interface ILoadBalancer {
      */
     fun selectNode(region: VoiceRegion?, guildId: Long?): LavalinkNode
 
+    /**
+     * Selects nodes for many guilds at once, this is used when the players of a node have to be moved elsewhere.
+     * Implementations should take the guilds they already placed into account, the default implementation simply
+     * calls [selectNode] for every guild.
+     *
+     * @param guilds The guilds to place, with the voice region they are in if known
+     *
+     * @return The selected node for every guild
+     * @throws RuntimeException when no nodes are available
+     */
+    fun selectNodes(guilds: Map<Long, VoiceRegion?>): Map<Long, LavalinkNode> {
+        return guilds.mapValues { (guildId, region) -> selectNode(region, guildId) }
+    }
+
     /**
      * Adds a penalty provider to the load balancer.
      */
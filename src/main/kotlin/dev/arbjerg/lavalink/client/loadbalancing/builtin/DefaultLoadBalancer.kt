@@ -4,17 +4,23 @@ import dev.arbjerg.lavalink.client.LavalinkClient
 import dev.arbjerg.lavalink.client.LavalinkNode
 import dev.arbjerg.lavalink.client.loadbalancing.ILoadBalancer
 import dev.arbjerg.lavalink.client.loadbalancing.VoiceRegion
+import java.util.concurrent.ConcurrentHashMap
 
 // TODO: have a look at this https://medium.com/javarevisited/load-balancing-algorithms-that-can-be-used-in-java-applications-6f605d1bf19
 class DefaultLoadBalancer(private val client: LavalinkClient) : ILoadBalancer {
     private val penaltyProviders = mutableListOf<IPenaltyProvider>()
 
+    // Region (or NO_REGION) to the nodes ordered by their penalty for that region.
+    private val rankings = ConcurrentHashMap<Any, Ranking>()
+
     override fun addPenaltyProvider(penaltyProvider: IPenaltyProvider) {
         penaltyProviders.add(penaltyProvider)
+        rankings.clear()
     }
 
     override fun removePenaltyProvider(penaltyProvider: IPenaltyProvider) {
         penaltyProviders.remove(penaltyProvider)
+        rankings.clear()
     }
 
     override fun selectNode(region: VoiceRegion?, guildId: Long?): LavalinkNode {
@@ -32,8 +38,92 @@ class DefaultLoadBalancer(private val client: LavalinkClient) : ILoadBalancer {
         }
 
         // TODO: Probably should enforce that no nodes go above the max
-        return nodes.filter { it.available }.minByOrNull { node ->
-            node.penalties.calculateTotal() + penaltyProviders.sumOf { it.getPenalty(node, region) }
-        } ?: throw IllegalStateException("No available nodes!")
+        return rankingFor(nodes, region).firstOrNull { it.available }
+            ?: throw IllegalStateException("No available nodes!")
+    }
+
+    /**
+     * Gets the available nodes ordered by penalty. The ordering is reused until the penalty inputs of a node change,
+     * the node list changes or [RANKING_TTL_NANOS] passed, the latter because penalty providers may change at any time.
+     */
+    private fun rankingFor(nodes: List<LavalinkNode>, region: VoiceRegion?): List<LavalinkNode> {
+        val key = region ?: NO_REGION
+        val now = System.nanoTime()
+        val current = rankings[key]
+
+        if (current != null && current.isValidFor(nodes, now)) {
+            return current.ranked
+        }
+
+        // Versions are read before the penalties, so a change in between leads to a new ranking on the next call.
+        val versions = LongArray(nodes.size) { nodes[it].penalties.inputVersion }
+        val ranked = nodes.filter { it.available }
+            .map { it to penaltyOf(it, region) }
+            .sortedBy { it.second }
+            .map { it.first }
+
+        rankings[key] = Ranking(nodes, versions, now, ranked)
+
+        return ranked
+    }
+
+    override fun selectNodes(guilds: Map<Long, VoiceRegion?>): Map<Long, LavalinkNode> {
+        val nodes = client.nodes.filter { it.available }
+
+        if (nodes.isEmpty()) {
+            throw IllegalStateException("No available nodes!")
+        }
+
+        // Penalties only change when a node sends new stats, so every guild placed during this pass is counted as
+        // one playing player on the node it was given. This fills up the nodes with the most headroom first.
+        val assigned = IntArray(nodes.size)
+        val penaltiesByRegion = mutableMapOf<VoiceRegion?, IntArray>()
+
+        return guilds.mapValues { (_, region) ->
+            val penalties = penaltiesByRegion.getOrPut(region) {
+                IntArray(nodes.size) { penaltyOf(nodes[it], region) }
+            }
+
+            var best = 0
+
+            for (i in 1 until nodes.size) {
+                if (penalties[i] + assigned[i] < penalties[best] + assigned[best]) {
+                    best = i
+                }
+            }
+
+            assigned[best]++
+            nodes[best]
+        }
+    }
+
+    private fun penaltyOf(node: LavalinkNode, region: VoiceRegion?): Int {
+        return node.penalties.calculateTotal() + penaltyProviders.sumOf { it.getPenalty(node, region) }
+    }
+
+    private class Ranking(
+        private val nodes: List<LavalinkNode>,
+        private val versions: LongArray,
+        private val createdAt: Long,
+        val ranked: List<LavalinkNode>
+    ) {
+        fun isValidFor(currentNodes: List<LavalinkNode>, now: Long): Boolean {
+            if (now - createdAt > RANKING_TTL_NANOS || currentNodes.size != nodes.size) {
+                return false
+            }
+
+            for (i in nodes.indices) {
+                if (currentNodes[i] !== nodes[i] || nodes[i].penalties.inputVersion != versions[i]) {
+                    return false
+                }
+            }
+
+            return true
+        }
+    }
+
+    private companion object {
+        val NO_REGION = Any()
+        const val RANKING_TTL_NANOS = 1_000_000_000L
     }
 }
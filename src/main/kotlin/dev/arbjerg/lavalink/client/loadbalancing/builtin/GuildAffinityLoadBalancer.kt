@@ -0,0 +1,119 @@
+package dev.arbjerg.lavalink.client.loadbalancing.builtin
+
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.loadbalancing.ILoadBalancer
+import dev.arbjerg.lavalink.client.loadbalancing.MAX_ERROR
+import dev.arbjerg.lavalink.client.loadbalancing.RegionFilterVerdict
+import dev.arbjerg.lavalink.client.loadbalancing.VoiceRegion
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.function.ToDoubleFunction
+import kotlin.math.ceil
+import kotlin.math.ln
+
+/**
+ * A load balancer that keeps every guild on the same node for as long as possible, so caches and connections on the
+ * node stay warm for that guild.
+ *
+ * Nodes are ranked per guild with weighted rendezvous hashing: a guild goes to its highest ranked node, and when a
+ * node is added or removed only the guilds ranked highest on that node move, about 1/N of them.
+ * A node that is full takes no new guilds, they spill over to the next node in their ranking. A node is full when it
+ * holds more than [loadFactor] times its fair share of all players, counting guilds that were assigned to it but do not
+ * have a player yet.
+ *
+ * Nodes that are unavailable, blocked for the region or have a total penalty of [MAX_ERROR] or more are skipped.
+ * Without a guild id, the node with the lowest penalty is picked.
+ *
+ * @param client The client to select nodes from
+ * @param loadFactor How far above its fair share a node may be filled before guilds spill over (Default: 1.25)
+ * @param nodeWeight The relative capacity of a node (Default: 1 for every node)
+ */
+class GuildAffinityLoadBalancer @JvmOverloads constructor(
+    private val client: LavalinkClient,
+    private val loadFactor: Double = 1.25,
+    private val nodeWeight: ToDoubleFunction<LavalinkNode> = ToDoubleFunction { 1.0 }
+) : ILoadBalancer {
+    private val penaltyProviders = CopyOnWriteArrayList<IPenaltyProvider>()
+
+    init {
+        require(loadFactor >= 1.0) { "loadFactor must be at least 1" }
+    }
+
+    override fun addPenaltyProvider(penaltyProvider: IPenaltyProvider) {
+        penaltyProviders.add(penaltyProvider)
+    }
+
+    override fun removePenaltyProvider(penaltyProvider: IPenaltyProvider) {
+        penaltyProviders.remove(penaltyProvider)
+    }
+
+    override fun selectNode(region: VoiceRegion?, guildId: Long?): LavalinkNode {
+        val available = client.nodes.filter { it.available }
+
+        if (available.isEmpty()) {
+            throw IllegalStateException("No available nodes!")
+        }
+
+        val penalties = available.associateWith { penaltyOf(it, region) }
+
+        if (guildId == null) {
+            return available.minBy { penalties.getValue(it) }
+        }
+
+        val candidates = available.filter { penalties.getValue(it) < MAX_ERROR && !isBlocked(it, region) }
+            .ifEmpty { available }
+
+        val weights = candidates.associateWith { nodeWeight.applyAsDouble(it).coerceAtLeast(0.0) }
+        val totalWeight = weights.values.sum()
+        val totalLoad = candidates.sumOf { loadOf(it) }
+        val ranked = candidates.sortedByDescending { score(guildId, it, weights.getValue(it)) }
+
+        if (totalWeight <= 0.0) {
+            return ranked.first()
+        }
+
+        // +1 for the guild that is being placed right now.
+        return ranked.firstOrNull { node ->
+            loadOf(node) < ceil(loadFactor * (totalLoad + 1) * weights.getValue(node) / totalWeight)
+        } ?: ranked.first()
+    }
+
+    private fun score(guildId: Long, node: LavalinkNode, weight: Double): Double {
+        if (weight <= 0.0) {
+            return Double.NEGATIVE_INFINITY
+        }
+
+        val hash = mix(guildId * GOLDEN_GAMMA + node.name.hashCode())
+        // A uniform number in (0, 1) from the top 53 bits of the hash
+        val uniform = ((hash ushr 11) + 0.5) / (1L shl 53)
+
+        return weight / -ln(uniform)
+    }
+
+    private fun loadOf(node: LavalinkNode): Int {
+        // Guilds that were just assigned have no player yet, without them a burst of joins would all see the same load.
+        return maxOf(node.getCachedPlayers().size, node.stats?.players ?: 0) + node.penalties.pendingAssignmentCount
+    }
+
+    private fun isBlocked(node: LavalinkNode, region: VoiceRegion?): Boolean {
+        val filter = node.regionFilter
+
+        return region != null && filter != null && filter.isRegionAllowed(node, region) == RegionFilterVerdict.BLOCK
+    }
+
+    private fun penaltyOf(node: LavalinkNode, region: VoiceRegion?): Int {
+        return node.penalties.calculateTotal() + penaltyProviders.sumOf { it.getPenalty(node, region) }
+    }
+
+    private companion object {
+        const val GOLDEN_GAMMA = -0x61c8864680b583ebL
+
+        // Finalizer of SplitMix64
+        fun mix(value: Long): Long {
+            var z = value
+            z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+            z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+            return z xor (z ushr 31)
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package dev.arbjerg.lavalink.client.loadbalancing.builtin
+
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.loadbalancing.MAX_ERROR
+import dev.arbjerg.lavalink.client.loadbalancing.VoiceRegion
+
+/**
+ * Penalizes nodes that are slow to respond, so they receive fewer new links.
+ *
+ * Every millisecond that the average REST latency of a node is above [averageBaselineMillis], or that the 99th
+ * percentile is above [tailBaselineMillis], adds [penaltyPerMillisecond] to the penalty. For reference, one playing
+ * player adds 1 penalty. Nodes without measurements get no penalty.
+ *
+ * The websocket handshake time is not used, it is measured only once per connection and includes setting up TLS.
+ *
+ * @see LavalinkNode.restLatencyMillis
+ * @see LavalinkNode.restTailLatencyMillis
+ */
+class LatencyPenaltyProvider @JvmOverloads constructor(
+    private val averageBaselineMillis: Long = 50,
+    private val tailBaselineMillis: Long = 250,
+    private val penaltyPerMillisecond: Double = 1.0
+) : IPenaltyProvider {
+    override fun getPenalty(node: LavalinkNode, region: VoiceRegion?): Int {
+        val excess = excessOf(node.restLatencyMillis, averageBaselineMillis) +
+            excessOf(node.restTailLatencyMillis, tailBaselineMillis)
+
+        return (excess * penaltyPerMillisecond).coerceAtMost(MAX_ERROR.toDouble()).toInt()
+    }
+
+    private fun excessOf(latency: Long, baseline: Long): Long {
+        return if (latency < 0) 0 else maxOf(0, latency - baseline)
+    }
+}
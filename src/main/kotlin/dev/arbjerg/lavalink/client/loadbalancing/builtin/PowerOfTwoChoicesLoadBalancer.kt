@@ -0,0 +1,117 @@
+package dev.arbjerg.lavalink.client.loadbalancing.builtin
+
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.loadbalancing.ILoadBalancer
+import dev.arbjerg.lavalink.client.loadbalancing.RegionFilterVerdict
+import dev.arbjerg.lavalink.client.loadbalancing.VoiceRegion
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.ThreadLocalRandom
+
+/**
+ * A load balancer that only compares a few randomly picked nodes and takes the one with the lowest penalty, known as
+ * "the power of two choices".
+ *
+ * Comparing two random nodes spreads players nearly as evenly as comparing all of them, but the cost of a selection
+ * does not grow with the amount of nodes. Because the candidates differ per selection, links created in between two
+ * stats updates also do not all end up on the node that looked best at the last update, which is what happens with
+ * [DefaultLoadBalancer].
+ *
+ * Nodes whose region filter blocks the requested region are never sampled, unless no other node is available.
+ *
+ * @param client The client to select nodes from
+ * @param choices The amount of nodes to compare per selection (Default: 2)
+ */
+class PowerOfTwoChoicesLoadBalancer @JvmOverloads constructor(
+    private val client: LavalinkClient,
+    private val choices: Int = 2
+) : ILoadBalancer {
+    private val penaltyProviders = CopyOnWriteArrayList<IPenaltyProvider>()
+
+    init {
+        require(choices > 0) { "choices must be positive" }
+    }
+
+    override fun addPenaltyProvider(penaltyProvider: IPenaltyProvider) {
+        penaltyProviders.add(penaltyProvider)
+    }
+
+    override fun removePenaltyProvider(penaltyProvider: IPenaltyProvider) {
+        penaltyProviders.remove(penaltyProvider)
+    }
+
+    override fun selectNode(region: VoiceRegion?, guildId: Long?): LavalinkNode {
+        val nodes = client.nodes
+
+        if (nodes.size > choices) {
+            val sampled = sample(nodes, region)
+
+            if (sampled != null) {
+                return sampled
+            }
+        }
+
+        // Few nodes, or sampling kept hitting unavailable ones. Fall back to comparing every candidate.
+        val candidates = nodes.filter { isCandidate(it, region) }
+            .ifEmpty { nodes.filter { it.available } }
+
+        return candidates.minByOrNull { penaltyOf(it, region) }
+            ?: throw IllegalStateException("No available nodes!")
+    }
+
+    private fun sample(nodes: List<LavalinkNode>, region: VoiceRegion?): LavalinkNode? {
+        val random = ThreadLocalRandom.current()
+        val picked = IntArray(choices)
+        var pickedCount = 0
+        var best: LavalinkNode? = null
+        var bestPenalty = Int.MAX_VALUE
+
+        // Picking random indices means unavailable or blocked nodes never have to be filtered out up front.
+        for (attempt in 0 until choices * MAX_ATTEMPTS_PER_CHOICE) {
+            if (pickedCount == choices) {
+                break
+            }
+
+            val index = random.nextInt(nodes.size)
+
+            if ((0 until pickedCount).any { picked[it] == index }) {
+                continue
+            }
+
+            val node = nodes[index]
+
+            if (!isCandidate(node, region)) {
+                continue
+            }
+
+            picked[pickedCount++] = index
+
+            val penalty = penaltyOf(node, region)
+
+            if (penalty < bestPenalty) {
+                best = node
+                bestPenalty = penalty
+            }
+        }
+
+        return best
+    }
+
+    private fun isCandidate(node: LavalinkNode, region: VoiceRegion?): Boolean {
+        if (!node.available) {
+            return false
+        }
+
+        val filter = node.regionFilter
+
+        return region == null || filter == null || filter.isRegionAllowed(node, region) != RegionFilterVerdict.BLOCK
+    }
+
+    private fun penaltyOf(node: LavalinkNode, region: VoiceRegion?): Int {
+        return node.penalties.calculateTotal() + penaltyProviders.sumOf { it.getPenalty(node, region) }
+    }
+
+    private companion object {
+        const val MAX_ATTEMPTS_PER_CHOICE = 4
+    }
+}
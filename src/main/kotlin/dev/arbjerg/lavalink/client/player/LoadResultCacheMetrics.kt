@@ -0,0 +1,36 @@
+package dev.arbjerg.lavalink.client.player
+
+/**
+ * Metrics of the load result cache, see [dev.arbjerg.lavalink.client.ClientOptions.Builder.setLoadResultCacheSize].
+ */
+interface LoadResultCacheMetrics {
+    /**
+     * The amount of loads that were answered from the cache.
+     */
+    val hits: Long
+
+    /**
+     * The amount of loads that were not in the cache.
+     */
+    val misses: Long
+
+    /**
+     * The amount of misses that did not make a request, because a request for the same identifier was already running.
+     */
+    val sharedLoads: Long
+
+    /**
+     * The amount of results that were removed to make room for others, or were not admitted at all.
+     */
+    val evictions: Long
+
+    /**
+     * The amount of results that were removed because they were older than the time to live.
+     */
+    val expirations: Long
+
+    /**
+     * The amount of results currently in the cache.
+     */
+    val size: Int
+}
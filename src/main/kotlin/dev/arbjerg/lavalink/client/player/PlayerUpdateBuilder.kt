@@ -19,6 +19,11 @@ class PlayerUpdateBuilder internal constructor(private val node: LavalinkNode, p
     private var state: Omissible<VoiceState> = Omissible.omitted()
     private var noReplace = false
 
+    /**
+     * Whether this update may be merged with other updates, see [dev.arbjerg.lavalink.client.NodeOptions.Builder.setPlayerUpdateCoalescingWindow].
+     */
+    internal var coalesce = false
+
     override fun setTrack(track: Track?): PlayerUpdateBuilder {
         this.trackUpdate = PlayerUpdateTrack(
             encoded = Omissible.of(track?.encoded),
@@ -116,11 +121,20 @@ class PlayerUpdateBuilder internal constructor(private val node: LavalinkNode, p
     )
 
     override fun subscribe(actual: CoreSubscriber<in LavalinkPlayer>) {
-        node.rest.updatePlayer(build(), guildId, noReplace)
+        val merger = node.playerUpdateMerger
+        val request = if (coalesce && merger != null) {
+            merger.submit(guildId, build(), noReplace)
+        } else {
+            node.rest.updatePlayer(build(), guildId, noReplace)
+        }
+
+        request
             .map { it.toLavalinkPlayer(node) }
             .doOnSuccess {
                 // Update player in cache
                 node.playerCache[guildId] = it!!
+                node.penalties.invalidate()
+                node.penalties.confirmAssignment(guildId)
             }
             .subscribe(actual)
     }
@@ -4,17 +4,45 @@ import com.fasterxml.jackson.databind.JsonNode
 import dev.arbjerg.lavalink.internal.fromJsonElement
 import dev.arbjerg.lavalink.internal.toJackson
 import dev.arbjerg.lavalink.internal.toJsonElement
+import kotlinx.serialization.json.JsonObject
 import kotlinx.serialization.json.jsonObject
 import dev.arbjerg.lavalink.protocol.v4.Track as ProtocolTrack
 
 internal fun ProtocolTrack.toCustom() = Track(this)
 
-class Track internal constructor(private var internalTrack: ProtocolTrack) {
+/**
+ * Wraps a track received from the node.
+ *
+ * Creating one is cheap, the jackson views of [userData] and [pluginInfo] are only built when they are read.
+ */
+class Track internal constructor(@Volatile private var internalTrack: ProtocolTrack) {
     val encoded = internalTrack.encoded
+    @Volatile
+    private var cachedUserData: CachedUserData? = null
+
+    /**
+     * User data of the track. It is converted to jackson once per [setUserData], every access returns its own copy
+     * that can be changed freely.
+     */
     val userData: JsonNode
-        get() = internalTrack.userData.toJackson()
+        get() {
+            val source = internalTrack.userData
+            val cached = cachedUserData
+            // Keyed on the source, a conversion that raced with setUserData can never be returned for the new data.
+            val node = if (cached != null && cached.source === source) {
+                cached.node
+            } else {
+                source.toJackson().also { cachedUserData = CachedUserData(source, it) }
+            }
+
+            return node.deepCopy()
+        }
     val info = internalTrack.info
-    val pluginInfo = internalTrack.pluginInfo.toJackson()
+
+    /**
+     * Plugin info of the track, converted to jackson the first time it is accessed.
+     */
+    val pluginInfo: JsonNode by lazy { internalTrack.pluginInfo.toJackson() }
 
     fun setUserData(userData: Any?) {
         internalTrack = internalTrack.copyWithUserData(
@@ -40,4 +68,6 @@ class Track internal constructor(private var internalTrack: ProtocolTrack) {
 
         return clone
     }
+
+    private class CachedUserData(val source: JsonObject, val node: JsonNode)
 }
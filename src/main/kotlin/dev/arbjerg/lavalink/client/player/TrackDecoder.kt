@@ -0,0 +1,113 @@
+package dev.arbjerg.lavalink.client.player
+
+import dev.arbjerg.lavalink.protocol.v4.TrackInfo
+import kotlinx.serialization.json.JsonObject
+import java.io.ByteArrayInputStream
+import java.io.DataInputStream
+import java.io.IOException
+import java.util.Base64
+import dev.arbjerg.lavalink.protocol.v4.Track as ProtocolTrack
+
+/**
+ * Decodes base64 encoded tracks locally, without asking a node.
+ *
+ * Lavaplayer encodes tracks in a versioned binary format, this decoder understands versions 1 to 3. Anything else, or
+ * anything that fails to decode, results in null so the caller can fall back to the node.
+ *
+ * Tracks decoded this way never have plugin info, only the node knows what plugins would have added.
+ *
+ * [TrackInfo.isSeekable] is not part of the encoded track, it is approximated as `!isStream`. This matches the built-in
+ * sources, but a source manager that reports a non-stream track as not seekable will disagree with the node.
+ */
+object TrackDecoder {
+    private const val TRACK_INFO_VERSIONED = 1
+    private const val MAX_SUPPORTED_VERSION = 3
+
+    /**
+     * Decodes the info of a base64 encoded track.
+     *
+     * @param encoded The base64 encoded track.
+     *
+     * @return The info of the track, or null if the track could not be decoded locally.
+     */
+    @JvmStatic
+    fun decodeInfo(encoded: String): TrackInfo? {
+        val bytes = try {
+            Base64.getDecoder().decode(encoded)
+        } catch (e: IllegalArgumentException) {
+            return null
+        }
+
+        return try {
+            readTrackInfo(bytes)
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    /**
+     * Decodes a base64 encoded track. Plugin info and user data of the returned track are empty.
+     *
+     * @param encoded The base64 encoded track.
+     *
+     * @return The decoded track, or null if the track could not be decoded locally.
+     */
+    @JvmStatic
+    fun decode(encoded: String): Track? {
+        val info = decodeInfo(encoded) ?: return null
+
+        return ProtocolTrack(encoded, info, JsonObject(mapOf()), JsonObject(mapOf())).toCustom()
+    }
+
+    private fun readTrackInfo(bytes: ByteArray): TrackInfo? {
+        val input = DataInputStream(ByteArrayInputStream(bytes))
+        val header = input.readInt()
+        val flags = header ushr 30
+        val messageSize = header and 0x3FFFFFFF
+
+        // The position is the last field of the message, after data that only the source manager can read.
+        if (messageSize < Long.SIZE_BYTES || messageSize > bytes.size - Int.SIZE_BYTES) {
+            return null
+        }
+
+        val version = if (flags and TRACK_INFO_VERSIONED != 0) input.readUnsignedByte() else 1
+
+        if (version < 1 || version > MAX_SUPPORTED_VERSION) {
+            return null
+        }
+
+        val title = input.readUTF()
+        val author = input.readUTF()
+        val length = input.readLong()
+        val identifier = input.readUTF()
+        val isStream = input.readBoolean()
+        val uri = if (version >= 2) input.readNullableUTF() else null
+        val artworkUrl = if (version >= 3) input.readNullableUTF() else null
+        val isrc = if (version >= 3) input.readNullableUTF() else null
+        val sourceName = input.readUTF()
+
+        val positionOffset = Int.SIZE_BYTES + messageSize - Long.SIZE_BYTES
+
+        if (positionOffset < bytes.size - input.available()) {
+            return null
+        }
+
+        val position = DataInputStream(ByteArrayInputStream(bytes, positionOffset, Long.SIZE_BYTES)).readLong()
+
+        return TrackInfo(
+            identifier,
+            !isStream,
+            author,
+            length,
+            isStream,
+            position,
+            title,
+            uri,
+            sourceName,
+            artworkUrl,
+            isrc
+        )
+    }
+
+    private fun DataInputStream.readNullableUTF(): String? = if (readBoolean()) readUTF() else null
+}
@@ -1,5 +1,6 @@
 package dev.arbjerg.lavalink.client.player
 
+import com.fasterxml.jackson.databind.JsonNode
 import dev.arbjerg.lavalink.internal.toJackson
 import dev.arbjerg.lavalink.protocol.v4.Exception as ProtocolException
 import dev.arbjerg.lavalink.protocol.v4.LoadResult
@@ -20,7 +21,7 @@ class TrackLoaded(result: LoadResult.TrackLoaded) : LavalinkLoadResult() {
 
 class PlaylistLoaded(result: LoadResult.PlaylistLoaded) : LavalinkLoadResult() {
     val info = result.data.info
-    val pluginInfo = result.data.pluginInfo.toJackson()
+    val pluginInfo: JsonNode by lazy { result.data.pluginInfo.toJackson() }
     val tracks = result.data.tracks.map { it.toCustom() }
 }
 
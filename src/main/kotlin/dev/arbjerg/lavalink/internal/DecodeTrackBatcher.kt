@@ -0,0 +1,96 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.internal.error.RestException
+import dev.arbjerg.lavalink.protocol.v4.Track
+import reactor.core.Disposable
+import reactor.core.publisher.Mono
+import reactor.core.publisher.MonoSink
+import reactor.core.scheduler.Schedulers
+import java.util.concurrent.TimeUnit
+
+/**
+ * Collects single track decodes and sends them to the node as one decode tracks request.
+ *
+ * A batch is sent once [maxSize] tracks are waiting, or [windowMs] after the first track was added. If the node rejects
+ * the batch, every track is decoded on its own so only the callers of broken tracks see an error. If the node could
+ * not be reached, every caller gets that error right away instead of sending one more request per track.
+ */
+internal class DecodeTrackBatcher(
+    private val rest: LavalinkRestClient,
+    private val windowMs: Long,
+    private val maxSize: Int
+) {
+    private var pending = mutableListOf<PendingDecode>()
+    private var flushTask: Disposable? = null
+
+    fun decode(encoded: String): Mono<Track> {
+        return Mono.create { sink -> add(PendingDecode(encoded, sink)) }
+    }
+
+    private fun add(decode: PendingDecode) {
+        val batch = synchronized(this) {
+            pending.add(decode)
+
+            if (pending.size >= maxSize) {
+                takeBatch()
+            } else {
+                if (pending.size == 1) {
+                    flushTask = Schedulers.parallel().schedule({ flush() }, windowMs, TimeUnit.MILLISECONDS)
+                }
+
+                null
+            }
+        }
+
+        batch?.let { send(it) }
+    }
+
+    private fun flush() {
+        val batch = synchronized(this) { takeBatch() }
+
+        if (batch.isNotEmpty()) {
+            send(batch)
+        }
+    }
+
+    // Must be called while holding the lock.
+    private fun takeBatch(): List<PendingDecode> {
+        flushTask?.dispose()
+        flushTask = null
+
+        val batch = pending
+        pending = mutableListOf()
+
+        return batch
+    }
+
+    private fun send(batch: List<PendingDecode>) {
+        if (batch.size == 1) {
+            decodeSingle(batch.first())
+            return
+        }
+
+        rest.decodeTracks(batch.map { it.encoded }).subscribe(
+            { result ->
+                if (result.tracks.size == batch.size) {
+                    batch.zip(result.tracks).forEach { (decode, track) -> decode.sink.success(track) }
+                } else {
+                    batch.forEach { decodeSingle(it) }
+                }
+            },
+            { error ->
+                if (error is RestException) {
+                    batch.forEach { decodeSingle(it) }
+                } else {
+                    batch.forEach { it.sink.error(error) }
+                }
+            }
+        )
+    }
+
+    private fun decodeSingle(decode: PendingDecode) {
+        rest.decodeTrack(decode.encoded).subscribe(decode.sink::success, decode.sink::error)
+    }
+
+    private class PendingDecode(val encoded: String, val sink: MonoSink<Track>)
+}
@@ -0,0 +1,132 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.ClientOptions
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EventBufferPolicy
+import org.slf4j.LoggerFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A queue of events waiting to be handed to listeners, safe to offer to from any thread.
+ *
+ * The amount of queued events is bounded per event class by the [EventBufferPolicy] from the [ClientOptions]. Classes
+ * with [EventBufferPolicy.Overflow.NEVER_DROP] are never dropped, no matter how far behind the listener is.
+ */
+internal class EventBuffer(
+    private val owner: String,
+    private val options: ClientOptions,
+    private val onDrop: (Class<out ClientEvent>) -> Unit = {}
+) {
+    private val logger = LoggerFactory.getLogger(EventBuffer::class.java)
+
+    private val queue = ConcurrentLinkedQueue<Entry>()
+    private val lanes = ConcurrentHashMap<Class<out ClientEvent>, Lane>()
+
+    /**
+     * Bookkeeping for a single event class.
+     */
+    private class Lane(val policy: EventBufferPolicy) {
+        val occupancy = AtomicInteger()
+        val dropped = AtomicLong()
+
+        // Only used for DROP_OLDEST, to find the oldest entry that is still queued.
+        val entries = ConcurrentLinkedQueue<Entry>()
+    }
+
+    /**
+     * A queued event, claimed exactly once by either [poll] or by being dropped.
+     */
+    private class Entry(val event: ClientEvent, val lane: Lane) : AtomicBoolean() {
+        fun claim() = compareAndSet(false, true)
+    }
+
+    val bufferedEvents: Map<Class<out ClientEvent>, Int>
+        get() = lanes.mapValues { it.value.occupancy.get() }
+
+    val droppedEvents: Map<Class<out ClientEvent>, Long>
+        get() = lanes.mapValues { it.value.dropped.get() }
+
+    /**
+     * @return false if the event was dropped instead.
+     */
+    fun offer(event: ClientEvent): Boolean {
+        val lane = lanes.computeIfAbsent(event.javaClass) { Lane(policyFor(it)) }
+        val policy = lane.policy
+        val entry = Entry(event, lane)
+
+        when (policy.overflow) {
+            EventBufferPolicy.Overflow.NEVER_DROP -> {
+                lane.occupancy.incrementAndGet()
+            }
+
+            EventBufferPolicy.Overflow.DROP_NEWEST -> {
+                if (lane.occupancy.incrementAndGet() > policy.capacity) {
+                    lane.occupancy.decrementAndGet()
+                    lane.dropped.incrementAndGet()
+                    onDrop(event.javaClass)
+                    logger.debug("Dropped {} on {}, buffer is full", event.javaClass.simpleName, owner)
+                    return false
+                }
+            }
+
+            EventBufferPolicy.Overflow.DROP_OLDEST -> {
+                lane.entries.offer(entry)
+
+                if (lane.occupancy.incrementAndGet() > policy.capacity) {
+                    dropOldest(lane)
+                }
+            }
+        }
+
+        queue.offer(entry)
+
+        return true
+    }
+
+    /**
+     * Takes the oldest event that has not been dropped.
+     */
+    fun poll(): ClientEvent? {
+        while (true) {
+            val entry = queue.poll() ?: return null
+
+            // Already dropped to make room for a newer event
+            if (!entry.claim()) {
+                continue
+            }
+
+            entry.lane.occupancy.decrementAndGet()
+
+            if (entry.lane.policy.overflow == EventBufferPolicy.Overflow.DROP_OLDEST) {
+                // This entry is almost always at the head.
+                entry.lane.entries.remove(entry)
+            }
+
+            return entry.event
+        }
+    }
+
+    private fun dropOldest(lane: Lane) {
+        while (true) {
+            val oldest = lane.entries.poll() ?: return
+
+            if (oldest.claim()) {
+                lane.occupancy.decrementAndGet()
+                lane.dropped.incrementAndGet()
+                onDrop(oldest.event.javaClass)
+                logger.debug("Dropped {} on {} in favour of a newer one", oldest.event.javaClass.simpleName, owner)
+                return
+            }
+        }
+    }
+
+    private fun policyFor(type: Class<out ClientEvent>): EventBufferPolicy {
+        return generateSequence<Class<*>>(type) { it.superclass }
+            .firstNotNullOfOrNull { options.eventBufferPolicies[it] }
+            ?: options.defaultEventBufferPolicy
+    }
+}
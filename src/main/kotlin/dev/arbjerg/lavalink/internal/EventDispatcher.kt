@@ -0,0 +1,91 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.event.EventDispatchMetrics
+import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Runs event listeners off the websocket threads.
+ *
+ * Work is striped over single threaded executors by key (the guild id for guild events), so everything with the same
+ * key runs in order while different keys run in parallel.
+ * With 0 threads, work runs directly on the calling thread.
+ */
+internal class EventDispatcher(threads: Int) : EventDispatchMetrics, Closeable {
+    private val logger = LoggerFactory.getLogger(EventDispatcher::class.java)
+
+    private val stripes = Array(threads) { index ->
+        ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, LinkedBlockingQueue()) {
+            Thread(it, "lavalink-event-dispatch-$index").apply { isDaemon = true }
+        }
+    }
+
+    private val dispatched = AtomicLong()
+    private val lastLag = AtomicLong()
+    private val maxLag = AtomicLong()
+
+    override val queueDepth: Int
+        get() = stripes.sumOf { it.queue.size }
+
+    override val queueDepths: List<Int>
+        get() = stripes.map { it.queue.size }
+
+    override val dispatchedEvents: Long
+        get() = dispatched.get()
+
+    override val lastDispatchLagNanos: Long
+        get() = lastLag.get()
+
+    override val maxDispatchLagNanos: Long
+        get() = maxLag.get()
+
+    override fun resetMaxDispatchLag() {
+        maxLag.set(0)
+    }
+
+    fun dispatch(key: Long, task: Runnable) {
+        if (stripes.isEmpty()) {
+            dispatched.incrementAndGet()
+            task.run()
+            return
+        }
+
+        val queuedAt = System.nanoTime()
+
+        try {
+            stripes[stripeFor(key)].execute {
+                recordLag(System.nanoTime() - queuedAt)
+
+                try {
+                    task.run()
+                } catch (e: Exception) {
+                    logger.error("Unhandled exception while dispatching an event", e)
+                }
+            }
+        } catch (e: RejectedExecutionException) {
+            logger.debug("Dropping event for key {}, the dispatcher has been shut down", key)
+        }
+    }
+
+    internal fun stripeFor(key: Long): Int {
+        // Snowflakes share most of their low bits, mix them before picking a stripe.
+        val mixed = (key xor (key ushr 32)).toInt() * -0x61c88647
+
+        return Math.floorMod(mixed xor (mixed ushr 16), stripes.size)
+    }
+
+    private fun recordLag(lag: Long) {
+        dispatched.incrementAndGet()
+        lastLag.set(lag)
+        maxLag.accumulateAndGet(lag) { a, b -> maxOf(a, b) }
+    }
+
+    override fun close() {
+        stripes.forEach { it.shutdownNow() }
+    }
+}
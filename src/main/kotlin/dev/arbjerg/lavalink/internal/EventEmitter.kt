@@ -0,0 +1,127 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.ClientOptions
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EventEmitterMetrics
+import org.slf4j.LoggerFactory
+import reactor.core.publisher.Sinks
+import reactor.core.scheduler.Schedulers
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Allows any amount of threads to emit into a reactor sink, which on its own rejects concurrent emission.
+ *
+ * Events go into an [EventBuffer]. Whichever thread finds the emitter idle drains the buffer into the sink, the
+ * others return right away. Emission failures are counted and logged instead of being dropped silently.
+ *
+ * When the sink is full because a subscriber is behind, the remaining events stay in the buffer, where their
+ * [dev.arbjerg.lavalink.client.event.EventBufferPolicy] decides what is kept, and emission is retried shortly after.
+ */
+internal class EventEmitter(
+    private val sink: Sinks.Many<ClientEvent>,
+    private val owner: String,
+    options: ClientOptions,
+    private val router: EventRouter? = null
+) : EventEmitterMetrics {
+    private val logger = LoggerFactory.getLogger(EventEmitter::class.java)
+
+    private val buffer = EventBuffer(owner, options)
+    private val wip = AtomicInteger()
+    private val contended = AtomicLong()
+    private val failed = AtomicLong()
+    private val retryScheduled = AtomicBoolean()
+
+    // The event the sink had no room for, only touched by the thread that is draining.
+    private var stalled: ClientEvent? = null
+
+    override val contendedEmits: Long
+        get() = contended.get()
+
+    override val failedEmits: Long
+        get() = failed.get()
+
+    override val bufferedEvents: Map<Class<out ClientEvent>, Int>
+        get() = buffer.bufferedEvents
+
+    override val droppedEvents: Map<Class<out ClientEvent>, Long>
+        get() = buffer.droppedEvents
+
+    override val listenerBufferedEvents: Map<Class<out ClientEvent>, Int>
+        get() = router?.bufferedEvents ?: emptyMap()
+
+    override val listenerDroppedEvents: Map<Class<out ClientEvent>, Long>
+        get() = router?.droppedEvents ?: emptyMap()
+
+    fun emit(event: ClientEvent) {
+        if (buffer.offer(event)) {
+            drain(true)
+        }
+    }
+
+    private fun drain(emitting: Boolean) {
+        if (wip.getAndIncrement() != 0) {
+            if (emitting) {
+                contended.incrementAndGet()
+            }
+            return
+        }
+
+        var missed = 1
+
+        do {
+            while (true) {
+                val event = stalled ?: buffer.poll() ?: break
+
+                stalled = null
+
+                if (!deliver(event)) {
+                    stalled = event
+                    scheduleRetry()
+                    break
+                }
+            }
+
+            missed = wip.addAndGet(-missed)
+        } while (missed != 0)
+    }
+
+    /**
+     * @return false if the sink is full and the event should be emitted again later.
+     */
+    private fun deliver(event: ClientEvent): Boolean {
+        val result = try {
+            sink.tryEmitNext(event)
+        } catch (e: RuntimeException) {
+            failed.incrementAndGet()
+            logger.error("Exception while emitting {} on {}", event.javaClass.simpleName, owner, e)
+            return true
+        }
+
+        if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+            return false
+        }
+
+        if (result.isFailure) {
+            failed.incrementAndGet()
+            logger.warn("Failed to emit {} on {}: {}", event.javaClass.simpleName, owner, result)
+        }
+
+        return true
+    }
+
+    private fun scheduleRetry() {
+        if (retryScheduled.compareAndSet(false, true)) {
+            Schedulers.parallel().schedule({
+                retryScheduled.set(false)
+                drain(false)
+            }, OVERFLOW_RETRY_DELAY_MS, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    private companion object {
+        const val OVERFLOW_RETRY_DELAY_MS = 10L
+    }
+}
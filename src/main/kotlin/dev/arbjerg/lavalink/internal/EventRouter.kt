@@ -0,0 +1,162 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.ClientOptions
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EmittedEvent
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import reactor.core.publisher.Flux
+import reactor.core.publisher.FluxSink
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Delivers events only to the listeners that registered for their type, and optionally their guild.
+ *
+ * Listeners are kept in a table indexed by event class and guild id, so routing an event costs a few hash lookups
+ * (one per class in its hierarchy) no matter how many listeners exist.
+ *
+ * Every listener has its own [EventBuffer], so a listener that is blocking or has not requested more events only
+ * holds as many events as the [dev.arbjerg.lavalink.client.event.EventBufferPolicy] of each class allows. The
+ * buffers of all listeners are summed up in [bufferedEvents] and [droppedEvents].
+ */
+internal class EventRouter(private val options: ClientOptions) {
+    private val routes = ConcurrentHashMap<Class<*>, Routes>()
+    private val listeners: MutableSet<Listener> = ConcurrentHashMap.newKeySet()
+    private val dropped = ConcurrentHashMap<Class<out ClientEvent>, LongAdder>()
+
+    /**
+     * The amount of events waiting in the buffers of current listeners, per event class.
+     */
+    val bufferedEvents: Map<Class<out ClientEvent>, Int>
+        get() {
+            val buffered = mutableMapOf<Class<out ClientEvent>, Int>()
+
+            listeners.forEach { listener ->
+                listener.bufferedEvents.forEach { (type, count) -> buffered.merge(type, count, Int::plus) }
+            }
+
+            return buffered
+        }
+
+    /**
+     * The amount of events dropped from the buffers of listeners, including listeners that are gone, per event class.
+     */
+    val droppedEvents: Map<Class<out ClientEvent>, Long>
+        get() = dropped.mapValues { it.value.sum() }
+
+    private class Routes {
+        val all = CopyOnWriteArrayList<Listener>()
+        val byGuild = ConcurrentHashMap<Long, CopyOnWriteArrayList<Listener>>()
+    }
+
+    /**
+     * Hands events to a single subscriber, one at a time and only as many as it requested.
+     */
+    private class Listener(
+        private val sink: FluxSink<ClientEvent>,
+        options: ClientOptions,
+        type: Class<*>,
+        onDrop: (Class<out ClientEvent>) -> Unit
+    ) {
+        private val buffer = EventBuffer("listener of ${type.simpleName}", options, onDrop)
+        private val wip = AtomicInteger()
+
+        val bufferedEvents: Map<Class<out ClientEvent>, Int>
+            get() = buffer.bufferedEvents
+
+        fun next(event: ClientEvent) {
+            if (buffer.offer(event)) {
+                drain()
+            }
+        }
+
+        fun drain() {
+            if (wip.getAndIncrement() != 0) {
+                return
+            }
+
+            var missed = 1
+
+            do {
+                while (sink.requestedFromDownstream() > 0 && !sink.isCancelled) {
+                    val event = buffer.poll() ?: break
+
+                    sink.next(event)
+                }
+
+                missed = wip.addAndGet(-missed)
+            } while (missed != 0)
+        }
+    }
+
+    /**
+     * @param type The class of events to receive, subclasses are included.
+     * @param guildId Only receive events for this guild, or null to receive the events of all guilds.
+     */
+    fun <T : ClientEvent> subscribe(type: Class<T>, guildId: Long?): Flux<T> {
+        return Flux.create { sink ->
+            @Suppress("UNCHECKED_CAST")
+            val listener = Listener(sink as FluxSink<ClientEvent>, options, type) {
+                dropped.computeIfAbsent(it) { LongAdder() }.increment()
+            }
+            val typeRoutes = routes.computeIfAbsent(type) { Routes() }
+
+            listeners.add(listener)
+            sink.onRequest { listener.drain() }
+
+            if (guildId == null) {
+                typeRoutes.all.add(listener)
+                sink.onDispose {
+                    typeRoutes.all.remove(listener)
+                    listeners.remove(listener)
+                }
+            } else {
+                // Adding and removing happens inside compute, so an empty list is never removed while it is being added to
+                typeRoutes.byGuild.compute(guildId) { _, listeners ->
+                    (listeners ?: CopyOnWriteArrayList()).apply { add(listener) }
+                }
+
+                sink.onDispose {
+                    typeRoutes.byGuild.computeIfPresent(guildId) { _, guildListeners ->
+                        guildListeners.remove(listener)
+                        guildListeners.ifEmpty { null }
+                    }
+                    listeners.remove(listener)
+                }
+            }
+        }
+    }
+
+    fun route(event: ClientEvent) {
+        val guildId = when (event) {
+            is EmittedEvent -> event.guildId
+            is PlayerUpdateEvent -> event.guildId
+            else -> null
+        }
+
+        for (type in hierarchy.get(event.javaClass)) {
+            val typeRoutes = routes[type] ?: continue
+
+            typeRoutes.all.forEach { it.next(event) }
+
+            if (guildId != null) {
+                typeRoutes.byGuild[guildId]?.forEach { it.next(event) }
+            }
+        }
+    }
+
+    private companion object {
+        /**
+         * The event class and all of its superclasses up to and including [ClientEvent].
+         */
+        val hierarchy = object : ClassValue<List<Class<*>>>() {
+            override fun computeValue(type: Class<*>): List<Class<*>> {
+                return generateSequence<Class<*>>(type) { it.superclass }
+                    .takeWhile { ClientEvent::class.java.isAssignableFrom(it) }
+                    .toList()
+            }
+        }
+    }
+}
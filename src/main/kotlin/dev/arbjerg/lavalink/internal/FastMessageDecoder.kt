@@ -0,0 +1,433 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import dev.arbjerg.lavalink.protocol.v4.*
+
+/**
+ * Decoder for the websocket ops that make up nearly all of the traffic, `playerUpdate` and `stats`.
+ *
+ * Frames are read in place, straight into the protocol objects, instead of going through the polymorphic
+ * [Message] serializer (which builds a full json tree before picking the subtype).
+ * Whenever the reader runs into something it does not expect, null is returned so the caller can fall back to
+ * the generic decoder.
+ */
+internal object FastMessageDecoder {
+    /**
+     * Finds the value of the top level `op` field without decoding the rest of the frame.
+     *
+     * @return the op of the frame, or null if it could not be determined.
+     */
+    fun sniffOp(text: String): Message.Op? = attempt(text) {
+        beginObject()
+
+        while (nextKey()) {
+            if (keyEquals("op")) {
+                return@attempt when {
+                    stringEquals("playerUpdate") -> Message.Op.PlayerUpdate
+                    stringEquals("stats") -> Message.Op.Stats
+                    stringEquals("event") -> Message.Op.Event
+                    stringEquals("ready") -> Message.Op.Ready
+                    else -> null
+                }
+            }
+
+            skipValue()
+        }
+
+        null
+    }
+
+    fun decodePlayerUpdate(node: LavalinkNode, text: String): PlayerUpdateEvent? = attempt(text) {
+        var guildId = -1L
+        var state: PlayerState? = null
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("guildId") -> guildId = readQuotedLong()
+                keyEquals("state") -> state = readPlayerState()
+                else -> skipValue()
+            }
+        }
+
+        if (guildId == -1L || state == null) {
+            return@attempt null
+        }
+
+        PlayerUpdateEvent(node, guildId, state)
+    }
+
+    fun decodeStats(text: String): StatsData? = attempt(text) {
+        var players = -1
+        var playingPlayers = -1
+        var uptime = -1L
+        var memory: Memory? = null
+        var cpu: Cpu? = null
+        var frameStats: FrameStats? = null
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("players") -> players = readInt()
+                keyEquals("playingPlayers") -> playingPlayers = readInt()
+                keyEquals("uptime") -> uptime = readLong()
+                keyEquals("memory") -> memory = readMemory()
+                keyEquals("cpu") -> cpu = readCpu()
+                keyEquals("frameStats") -> frameStats = if (readNull()) null else readFrameStats()
+                else -> skipValue()
+            }
+        }
+
+        if (players == -1 || playingPlayers == -1 || uptime == -1L || memory == null || cpu == null) {
+            return@attempt null
+        }
+
+        StatsData(frameStats, players, playingPlayers, uptime, memory, cpu)
+    }
+
+    private inline fun <T> attempt(text: String, block: Reader.() -> T?): T? {
+        return try {
+            Reader(text).block()
+        } catch (e: UnexpectedInput) {
+            null
+        }
+    }
+
+    private fun Reader.readPlayerState(): PlayerState {
+        var time = -1L
+        var position = -1L
+        var connected: Boolean? = null
+        var ping = -1L
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("time") -> time = readLong()
+                keyEquals("position") -> position = readLong()
+                keyEquals("connected") -> connected = readBoolean()
+                keyEquals("ping") -> ping = readLong()
+                else -> skipValue()
+            }
+        }
+
+        if (time == -1L || position == -1L || connected == null) {
+            throw UnexpectedInput
+        }
+
+        return PlayerState(time, position, connected, ping)
+    }
+
+    private fun Reader.readMemory(): Memory {
+        var free = -1L
+        var used = -1L
+        var allocated = -1L
+        var reservable = -1L
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("free") -> free = readLong()
+                keyEquals("used") -> used = readLong()
+                keyEquals("allocated") -> allocated = readLong()
+                keyEquals("reservable") -> reservable = readLong()
+                else -> skipValue()
+            }
+        }
+
+        if (free == -1L || used == -1L || allocated == -1L || reservable == -1L) {
+            throw UnexpectedInput
+        }
+
+        return Memory(free, used, allocated, reservable)
+    }
+
+    private fun Reader.readCpu(): Cpu {
+        var cores = -1
+        var systemLoad = Double.NaN
+        var lavalinkLoad = Double.NaN
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("cores") -> cores = readInt()
+                keyEquals("systemLoad") -> systemLoad = readDouble()
+                keyEquals("lavalinkLoad") -> lavalinkLoad = readDouble()
+                else -> skipValue()
+            }
+        }
+
+        if (cores == -1 || systemLoad.isNaN() || lavalinkLoad.isNaN()) {
+            throw UnexpectedInput
+        }
+
+        return Cpu(cores, systemLoad, lavalinkLoad)
+    }
+
+    private fun Reader.readFrameStats(): FrameStats {
+        var sent: Int? = null
+        var nulled: Int? = null
+        var deficit: Int? = null
+
+        beginObject()
+
+        while (nextKey()) {
+            when {
+                keyEquals("sent") -> sent = readInt()
+                keyEquals("nulled") -> nulled = readInt()
+                keyEquals("deficit") -> deficit = readInt()
+                else -> skipValue()
+            }
+        }
+
+        if (sent == null || nulled == null || deficit == null) {
+            throw UnexpectedInput
+        }
+
+        return FrameStats(sent, nulled, deficit)
+    }
+
+    /**
+     * Thrown by the [Reader] whenever the input is not in the shape it expects. Has no stack trace as it is only used
+     * to unwind back to [attempt].
+     */
+    private object UnexpectedInput : RuntimeException() {
+        override fun fillInStackTrace(): Throwable = this
+    }
+
+    /**
+     * Minimal pull reader over a json string. Keys are compared in place, so reading a frame does not allocate any
+     * strings. Strings with escapes are skipped over, but never match a key or value.
+     */
+    private class Reader(private val text: String) {
+        private var pos = 0
+        private var keyStart = 0
+        private var keyEnd = 0
+        private var keyEscaped = false
+        private var first = true
+
+        fun beginObject() {
+            skipWhitespace()
+            expect('{')
+            first = true
+        }
+
+        /**
+         * Advances to the next key of the current object.
+         *
+         * @return false when the end of the object has been reached.
+         */
+        fun nextKey(): Boolean {
+            skipWhitespace()
+
+            if (peek() == '}') {
+                pos++
+                first = false
+                return false
+            }
+
+            if (!first) {
+                expect(',')
+                skipWhitespace()
+            }
+
+            first = false
+            keyStart = pos + 1
+            keyEscaped = false
+            keyEnd = skipString() - 1
+            skipWhitespace()
+            expect(':')
+            skipWhitespace()
+
+            return true
+        }
+
+        fun keyEquals(name: String): Boolean {
+            return !keyEscaped && keyEnd - keyStart == name.length && text.regionMatches(keyStart, name, 0, name.length)
+        }
+
+        /**
+         * Consumes a string value if it is equal to [value].
+         */
+        fun stringEquals(value: String): Boolean {
+            if (peek() != '"') {
+                throw UnexpectedInput
+            }
+
+            val start = pos + 1
+            val matches = text.length > start + value.length &&
+                text[start + value.length] == '"' &&
+                text.regionMatches(start, value, 0, value.length)
+
+            if (matches) {
+                pos = start + value.length + 1
+            }
+
+            return matches
+        }
+
+        fun readNull(): Boolean {
+            if (text.startsWith("null", pos)) {
+                pos += 4
+                return true
+            }
+
+            return false
+        }
+
+        fun readBoolean(): Boolean {
+            return when {
+                text.startsWith("true", pos) -> {
+                    pos += 4
+                    true
+                }
+
+                text.startsWith("false", pos) -> {
+                    pos += 5
+                    false
+                }
+
+                else -> throw UnexpectedInput
+            }
+        }
+
+        fun readInt(): Int {
+            val value = readLong()
+
+            if (value < Int.MIN_VALUE || value > Int.MAX_VALUE) {
+                throw UnexpectedInput
+            }
+
+            return value.toInt()
+        }
+
+        fun readLong(): Long {
+            val negative = peek() == '-'
+
+            if (negative) {
+                pos++
+            }
+
+            val start = pos
+            var value = 0L
+
+            while (pos < text.length && text[pos] in '0'..'9') {
+                val digit = text[pos] - '0'
+
+                // Snowflakes have up to 19 digits, which still fit as long as the value does not overflow.
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    throw UnexpectedInput
+                }
+
+                value = value * 10 + digit
+                pos++
+            }
+
+            if (pos == start || (pos < text.length && (text[pos] == '.' || text[pos] == 'e' || text[pos] == 'E'))) {
+                throw UnexpectedInput
+            }
+
+            return if (negative) -value else value
+        }
+
+        fun readQuotedLong(): Long {
+            expect('"')
+            val value = readLong()
+            expect('"')
+
+            return value
+        }
+
+        fun readDouble(): Double {
+            val start = pos
+
+            while (pos < text.length && text[pos].let { it in '0'..'9' || it == '-' || it == '+' || it == '.' || it == 'e' || it == 'E' }) {
+                pos++
+            }
+
+            if (pos == start) {
+                throw UnexpectedInput
+            }
+
+            return text.substring(start, pos).toDoubleOrNull() ?: throw UnexpectedInput
+        }
+
+        fun skipValue() {
+            when (peek()) {
+                '"' -> skipString()
+                '{', '[' -> skipContainer()
+                else -> {
+                    // numbers, booleans and null
+                    while (pos < text.length && text[pos] != ',' && text[pos] != '}' && text[pos] != ']') {
+                        pos++
+                    }
+                }
+            }
+        }
+
+        /**
+         * Skips over a string, remembering whether it contained escapes in [keyEscaped].
+         *
+         * @return the position right after the closing quote.
+         */
+        private fun skipString(): Int {
+            expect('"')
+
+            while (peek() != '"') {
+                if (text[pos] == '\\') {
+                    keyEscaped = true
+                    pos++
+                }
+
+                pos++
+            }
+
+            return ++pos
+        }
+
+        private fun skipContainer() {
+            var depth = 0
+
+            do {
+                when (peek()) {
+                    '"' -> {
+                        skipString()
+                        continue
+                    }
+
+                    '{', '[' -> depth++
+                    '}', ']' -> depth--
+                }
+
+                pos++
+            } while (depth > 0)
+        }
+
+        private fun skipWhitespace() {
+            while (pos < text.length && text[pos].isWhitespace()) {
+                pos++
+            }
+        }
+
+        private fun peek(): Char {
+            if (pos >= text.length) {
+                throw UnexpectedInput
+            }
+
+            return text[pos]
+        }
+
+        private fun expect(c: Char) {
+            if (peek() != c) {
+                throw UnexpectedInput
+            }
+
+            pos++
+        }
+    }
+}
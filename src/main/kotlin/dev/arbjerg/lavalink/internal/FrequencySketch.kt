@@ -0,0 +1,64 @@
+package dev.arbjerg.lavalink.internal
+
+/**
+ * A count-min sketch of how often keys were seen recently, with counters that saturate at 15.
+ *
+ * Once the amount of increments reaches ten times the width, all counters are halved so old popularity fades out.
+ * Not thread safe.
+ */
+internal class FrequencySketch(capacity: Int) {
+    private val width = Integer.highestOneBit(maxOf(capacity, 16) - 1) shl 1
+    private val table = IntArray(width * DEPTH)
+    private val sampleSize = width * 10
+    private var additions = 0
+
+    fun increment(key: Any) {
+        val hash = key.hashCode()
+        var added = false
+
+        for (row in 0 until DEPTH) {
+            val index = indexOf(hash, row)
+
+            if (table[index] < MAX_COUNT) {
+                table[index]++
+                added = true
+            }
+        }
+
+        if (added && ++additions >= sampleSize) {
+            reset()
+        }
+    }
+
+    fun frequency(key: Any): Int {
+        val hash = key.hashCode()
+        var frequency = MAX_COUNT
+
+        for (row in 0 until DEPTH) {
+            frequency = minOf(frequency, table[indexOf(hash, row)])
+        }
+
+        return frequency
+    }
+
+    private fun reset() {
+        for (i in table.indices) {
+            table[i] = table[i] shr 1
+        }
+
+        additions /= 2
+    }
+
+    private fun indexOf(hash: Int, row: Int): Int {
+        var h = (hash.toLong() + SEEDS[row]) * SEEDS[row]
+        h = h xor (h ushr 32)
+
+        return row * width + (h.toInt() and (width - 1))
+    }
+
+    private companion object {
+        const val DEPTH = 4
+        const val MAX_COUNT = 15
+        val SEEDS = longArrayOf(-0x3c3c5ab6a7c6ca3bL, -0x4b47d5b1ab3a2a6bL, -0x61c8864680b583ebL, -0x7a4ee2b7a0e4b3a9L)
+    }
+}
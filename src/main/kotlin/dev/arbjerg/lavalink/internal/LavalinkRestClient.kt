@@ -2,42 +2,50 @@ package dev.arbjerg.lavalink.internal
 
 import dev.arbjerg.lavalink.client.LavalinkNode
 import dev.arbjerg.lavalink.client.http.HttpBuilder
+import dev.arbjerg.lavalink.client.http.RequestLane
 import dev.arbjerg.lavalink.internal.error.RestException
 import dev.arbjerg.lavalink.protocol.v4.*
+import kotlinx.serialization.ExperimentalSerializationApi
 import kotlinx.serialization.encodeToString
+import kotlinx.serialization.json.decodeFromStream
 import okhttp3.Call
 import okhttp3.MediaType.Companion.toMediaType
 import okhttp3.Request
 import okhttp3.RequestBody.Companion.toRequestBody
 import okhttp3.Response
+import reactor.core.publisher.Flux
 import reactor.core.publisher.Mono
+import reactor.core.publisher.MonoSink
+import reactor.core.scheduler.Schedulers
 import java.io.IOException
+import java.io.InterruptedIOException
+import java.util.concurrent.TimeUnit
 
 class LavalinkRestClient(val node: LavalinkNode) {
     fun getPlayers(): Mono<Players> {
         return newRequest {
             path("/v4/sessions/${node.sessionId}/players")
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     fun getPlayer(guildId: Long): Mono<Player> {
         return newRequest {
             path("/v4/sessions/${node.sessionId}/players/$guildId")
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     fun updatePlayer(player: PlayerUpdate, guildId: Long, noReplace: Boolean = false): Mono<Player> {
         return newRequest {
             path("/v4/sessions/${node.sessionId}/players/$guildId?noReplace=$noReplace")
             patch(json.encodeToString(player).toRequestBody("application/json".toMediaType()))
-        }.toMono()
+        }.toMono(if (player.voice is Omissible.Present) RequestLane.VOICE else RequestLane.PLAYBACK)
     }
 
     fun destroyPlayer(guildId: Long): Mono<Unit> {
         return newRequest {
             path("/v4/sessions/${node.sessionId}/players/$guildId")
             delete()
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     fun loadItem(identifier: String): Mono<LoadResult> {
@@ -46,7 +54,73 @@ class LavalinkRestClient(val node: LavalinkNode) {
                 addPathSegments("v4/loadtracks")
                 addQueryParameter("identifier", identifier)
             }
-        }.toMono()
+        }.toMono(RequestLane.LOADING, measureLatency = false, largeResponse = true)
+    }
+
+    /**
+     * Loads an item and emits its tracks as they are read from the response. The body is only read as far as the
+     * subscriber has requested tracks, so a slow subscriber holds back the node instead of buffering the playlist.
+     *
+     * The call timeout of the node does not apply, as the body is read at the pace of the subscriber. A node that
+     * stops sending is still caught by the read timeout. The request holds a [RequestLane.STREAMING] slot until the
+     * body is read or the subscriber cancels, so slow subscribers only hold back other streaming loads.
+     */
+    @OptIn(ExperimentalSerializationApi::class)
+    fun loadItemStreaming(identifier: String): Flux<Track> {
+        val call = newRequest {
+            url {
+                addPathSegments("v4/loadtracks")
+                addQueryParameter("identifier", identifier)
+            }
+        }
+
+        call.timeout().clearTimeout()
+
+        val response = Mono.create<Response> { sink ->
+            sink.onCancel {
+                // try to cancel the request
+                call.cancel()
+            }
+            node.restDispatcher.enqueue(RequestLane.STREAMING, call, object : okhttp3.Callback {
+                override fun onFailure(call: Call, e: IOException) {
+                    val request = call.request()
+                    sink.error(IOException(
+                        "${request.method} ${request.url} [node=${node.name}] -> ${e.message}", e
+                    ))
+                }
+
+                override fun onResponse(call: Call, response: Response) {
+                    sink.success(response)
+                }
+            })
+        }.doOnDiscard(Response::class.java) { it.close() }
+
+        return response.flatMapMany { res ->
+            // The response is closed here rather than by the reader, which is only created once the subscription
+            // reached boundedElastic. A subscriber that cancels before that would otherwise leak the connection.
+            Flux.using({ res }, { readTracks(it) }, Response::close)
+        }
+    }
+
+    @OptIn(ExperimentalSerializationApi::class)
+    private fun readTracks(res: Response): Flux<Track> {
+        // Tracks are decoded while the body is read, which should not block the okhttp threads.
+        return Flux.generate(
+            {
+                val body = res.body ?: throw IOException("Load result without a body")
+
+                if (res.code > 299) {
+                    throw RestException(json.decodeFromStream<Error>(body.byteStream()))
+                }
+
+                LoadResultStreamReader(body.byteStream())
+            },
+            { reader, sink ->
+                reader.next()?.let { sink.next(it) } ?: sink.complete()
+                reader
+            },
+            { it.close() }
+        ).subscribeOn(Schedulers.boundedElastic())
     }
 
     fun decodeTrack(encoded: String): Mono<Track> {
@@ -55,27 +129,27 @@ class LavalinkRestClient(val node: LavalinkNode) {
                 addPathSegments("v4/decodetrack")
                 addQueryParameter("encodedTrack", encoded)
             }
-        }.toMono()
+        }.toMono(RequestLane.LOADING)
     }
 
     fun decodeTracks(encoded: List<String>): Mono<Tracks> {
         return newRequest {
             path("/v4/decodetracks")
             post(json.encodeToString(encoded).toRequestBody("application/json".toMediaType()))
-        }.toMono()
+        }.toMono(RequestLane.LOADING, largeResponse = true)
     }
 
     fun getNodeInfo(): Mono<Info> {
         return newRequest {
             path("/v4/info")
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     fun patchSession(session: Session): Mono<Session> {
         return newRequest {
             path("/v4/sessions/${node.sessionId}")
             patch(json.encodeToString(session).toRequestBody("application/json".toMediaType()))
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     fun getSession(): Mono<Session> {
@@ -84,7 +158,7 @@ class LavalinkRestClient(val node: LavalinkNode) {
             // Using patch with an empty object is a dirty hack because GET is not supported for this resource
             // 7 years younger me should have known better ~Freya
             patch("{}".toRequestBody("application/json".toMediaType()))
-        }.toMono()
+        }.toMono(RequestLane.PLAYBACK)
     }
 
     /**
@@ -99,14 +173,34 @@ class LavalinkRestClient(val node: LavalinkNode) {
         return node.httpClient.newCall(builder.finalizeUrl(node.baseUri).build())
     }
 
-    private inline fun <reified T : Any> Call.toMono(): Mono<T> {
+    /**
+     * @param lane the lane the request waits in when the node is busy
+     * @param measureLatency whether the time the call takes counts towards [LavalinkNode.restLatencyMillis]
+     * @param largeResponse whether the endpoint can return a large body even when the size is not known up front, such
+     * as a playlist sent chunked
+     */
+    private inline fun <reified T : Any> Call.toMono(
+        lane: RequestLane,
+        measureLatency: Boolean = true,
+        largeResponse: Boolean = false
+    ): Mono<T> {
         return Mono.create { sink ->
             sink.onCancel {
                 // try to cancel the request
                 this.cancel()
             }
-            this.enqueue(object : okhttp3.Callback {
+            node.restDispatcher.enqueue(lane, this, object : okhttp3.Callback {
                 override fun onFailure(call: Call, e: IOException) {
+                    // A timed out call counts as taking the whole timeout, so a node that stops answering is penalized.
+                    // Other failures are not measured, a refused connection fails fast and would look like a quick
+                    // node, and a cancelled call says nothing about the node.
+                    if (measureLatency && e is InterruptedIOException) {
+                        val client = node.httpClient
+                        val timeout = client.callTimeoutMillis.takeIf { it > 0 } ?: client.readTimeoutMillis
+
+                        node.restLatency.record(TimeUnit.MILLISECONDS.toNanos(timeout.toLong()))
+                    }
+
                     val request = call.request()
                     sink.error(IOException(
                         "${request.method} ${request.url} [node=${node.name}] -> ${e.message}", e
@@ -114,27 +208,53 @@ class LavalinkRestClient(val node: LavalinkNode) {
                 }
 
                 override fun onResponse(call: Call, response: Response) {
-                    response.use { res ->
-                        res.body?.use { body ->
-                            if (res.code > 299) {
-                                val error = json.decodeFromString<Error>(body.string())
+                    if (measureLatency) {
+                        // Measured by okhttp from sending the request, waiting in the rest dispatcher does not count.
+                        val millis = response.receivedResponseAtMillis - response.sentRequestAtMillis
+                        node.restLatency.record(TimeUnit.MILLISECONDS.toNanos(millis))
+                    }
+
+                    val length = response.body?.contentLength() ?: 0
 
-                                sink.error(RestException(error))
-                                return
-                            }
+                    // Bodies are decoded while they are read from the socket. Large ones are handled elsewhere to keep
+                    // the okhttp threads free for other calls, small chunked ones are cheaper to decode right here.
+                    if (largeResponse || length > OFFLOAD_DECODE_THRESHOLD_BYTES) {
+                        Schedulers.boundedElastic().schedule { handleResponse(response, sink) }
+                    } else {
+                        handleResponse(response, sink)
+                    }
+                }
+            })
+        }
+    }
 
-                            if (res.code == 204) {
-                                sink.success()
-                                return
-                            }
+    @OptIn(ExperimentalSerializationApi::class)
+    private inline fun <reified T : Any> handleResponse(response: Response, sink: MonoSink<T>) {
+        try {
+            response.use { res ->
+                res.body?.use { body ->
+                    if (res.code > 299) {
+                        val error = json.decodeFromStream<Error>(body.byteStream())
 
-                            val parsed = json.decodeFromString<T>(body.string())
+                        sink.error(RestException(error))
+                        return
+                    }
 
-                            sink.success(parsed)
-                        }
+                    if (res.code == 204) {
+                        sink.success()
+                        return
                     }
+
+                    val parsed = json.decodeFromStream<T>(body.byteStream())
+
+                    sink.success(parsed)
                 }
-            })
+            }
+        } catch (e: IOException) {
+            sink.error(e)
+        } catch (e: RuntimeException) {
+            // Malformed responses
+            sink.error(e)
         }
     }
 }
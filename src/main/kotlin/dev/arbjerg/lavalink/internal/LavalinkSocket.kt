@@ -3,21 +3,25 @@ package dev.arbjerg.lavalink.internal
 import dev.arbjerg.lavalink.VERSION as CLIENT_VERSION
 import dev.arbjerg.lavalink.client.LavalinkNode
 import dev.arbjerg.lavalink.client.LinkState
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import dev.arbjerg.lavalink.client.event.StatsEvent
 import dev.arbjerg.lavalink.client.player.toCustom
 import dev.arbjerg.lavalink.client.event.toClientEvent
 import dev.arbjerg.lavalink.protocol.v4.Message
+import dev.arbjerg.lavalink.protocol.v4.PlayerState
 import dev.arbjerg.lavalink.protocol.v4.json
 import okhttp3.Request
 import okhttp3.Response
 import okhttp3.WebSocket
 import okhttp3.WebSocketListener
 import org.slf4j.LoggerFactory
-import reactor.core.publisher.Sinks
 import java.io.Closeable
 import java.io.EOFException
 import java.net.ConnectException
 import java.net.SocketException
 import java.net.SocketTimeoutException
+import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.atomic.AtomicBoolean
 
 class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Closeable {
@@ -25,12 +29,30 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
 
     internal var socket: WebSocket? = null
 
+    // A new socket may fail before it is assigned to [socket], so the old one is remembered instead.
+    @Volatile
+    private var replacedSocket: WebSocket? = null
+
+    @Volatile
     var mayReconnect = true
     var lastReconnectAttempt = 0L
     @Volatile
     private var reconnectsAttempted = 0
+
+    /**
+     * The delay of the last scheduled reconnect in milliseconds.
+     */
+    @Volatile
+    var reconnectDelayMillis = 0L
+        private set
+
+    /**
+     * The delay of the last scheduled reconnect in milliseconds.
+     */
+    @Deprecated("Reconnects use an exponential backoff with jitter now", ReplaceWith("reconnectDelayMillis"))
     val reconnectInterval: Int
-        get() = reconnectsAttempted * 2000 - 2000
+        get() = reconnectDelayMillis.toInt()
+    private var scheduledReconnect: ScheduledFuture<*>? = null
     var open: Boolean = false
         private set
     @Volatile
@@ -43,6 +65,7 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
 
     override fun onOpen(webSocket: WebSocket, response: Response) {
         logger.info("${node.name} has been connected!")
+        node.websocketLatencyMillis = response.receivedResponseAtMillis - response.sentRequestAtMillis
         open = true
         reconnectsAttempted = 0
         hasEverConnected = true
@@ -52,6 +75,31 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
     override fun onMessage(webSocket: WebSocket, text: String) {
         logger.debug("-> {}", text)
 
+        // Player updates and stats make up almost all traffic, they skip the generic decoder when possible.
+        when (FastMessageDecoder.sniffOp(text)) {
+            Message.Op.PlayerUpdate -> {
+                val update = FastMessageDecoder.decodePlayerUpdate(node, text)
+
+                if (update != null) {
+                    handlePlayerUpdate(update.guildId, update.state)
+                    emitEvent(update)
+                    return
+                }
+            }
+
+            Message.Op.Stats -> {
+                val stats = FastMessageDecoder.decodeStats(text)
+
+                if (stats != null) {
+                    node.stats = stats
+                    emitEvent(StatsEvent(node, stats.frameStats, stats.players, stats.playingPlayers, stats.uptime, stats.memory, stats.cpu))
+                    return
+                }
+            }
+
+            else -> {}
+        }
+
         val event = json.decodeFromString<Message>(text)
 
         when (event.op) {
@@ -69,19 +117,8 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
                 node.transferring = false
                 logger.info("${node.name} is ready with session id $sessionId")
 
-                node.playerCache.values.forEach { player ->
-                    // Ignore empty voice states, not sure what causes this
-                    val (token, endpoint, stateSessionId) = player.voiceState
-
-                    if (token.isBlank() || endpoint.isBlank() || stateSessionId.isBlank()) {
-                        return@forEach
-                    }
-
-                    // Re-create the player on the node.
-                    player.stateToBuilder()
-                        .setNoReplace(false)
-                        .subscribe()
-                }
+                // Re-create the players on the node.
+                node.replayCachedPlayers()
 
                 if (!resumed) {
                     node.cachedSession = null
@@ -104,14 +141,8 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
 
             Message.Op.PlayerUpdate -> {
                 val update = event as Message.PlayerUpdateEvent
-                val idLong = update.guildId.toLong()
 
-                node.getCachedPlayer(idLong)?.state = update.state
-                node.lavalink.getLinkIfCached(idLong)?.state = if (update.state.connected) {
-                    LinkState.CONNECTED
-                } else {
-                    LinkState.DISCONNECTED
-                }
+                handlePlayerUpdate(update.guildId.toLong(), update.state)
             }
 
             Message.Op.Event -> {
@@ -146,20 +177,34 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
         }
 
         // Handle user listeners when the lib has handled its own events.
-        try {
-            node.sink.tryEmitNext(event.toClientEvent(node))
-        } catch (e: Exception) {
-            node.sink.emitError(e, Sinks.EmitFailureHandler.FAIL_FAST)
+        emitEvent(event.toClientEvent(node))
+    }
+
+    private fun handlePlayerUpdate(guildId: Long, state: PlayerState) {
+        node.getCachedPlayer(guildId)?.state = state
+        node.lavalink.getLinkIfCached(guildId)?.state = if (state.connected) {
+            LinkState.CONNECTED
+        } else {
+            LinkState.DISCONNECTED
         }
     }
 
+    private fun emitEvent(event: ClientEvent) {
+        if (event is PlayerUpdateEvent) {
+            node.lavalink.onPlayerUpdate(event)
+        }
+
+        node.dispatchEvent(event)
+    }
+
     override fun onClosed(webSocket: WebSocket, code: Int, reason: String) {
         if (mayReconnect) {
-            logger.info("${node.name} disconnected, reconnecting in ${reconnectInterval / 1000} seconds")
+            logger.info("${node.name} disconnected, reconnecting in ${reconnectDelayMillis}ms")
         }
     }
 
     override fun onFailure(webSocket: WebSocket, t: Throwable, response: Response?) {
+        scheduleReconnect(webSocket)
         handleFailureThrowable(t)
 
         node.available = false
@@ -179,7 +224,7 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
             }
 
             is ConnectException -> {
-                logger.warnOrTrace("Failed to connect to WS of ${node.name} (${node.baseUri}), retrying in ${reconnectInterval / 1000} seconds", t)
+                logger.warnOrTrace("Failed to connect to WS of ${node.name} (${node.baseUri}), retrying in ${reconnectDelayMillis}ms", t)
             }
 
             is SocketException -> {
@@ -189,7 +234,7 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
                     return
                 }
 
-                logger.warnOrTrace("Socket error on ${node.name}, reconnecting in ${reconnectInterval / 1000} seconds", t)
+                logger.warnOrTrace("Socket error on ${node.name}, reconnecting in ${reconnectDelayMillis}ms", t)
             }
 
             else -> {
@@ -210,6 +255,7 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
         node.available = false
         open = false
         node.lavalink.onNodeDisconnected(node)
+        scheduleReconnect(webSocket)
 
         if (code == 1000 || code == 1001) {
             logger.info(
@@ -236,8 +282,39 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
         connect()
     }
 
+    /**
+     * Schedules a reconnect with exponential backoff, unless one is already scheduled.
+     *
+     * @param webSocket the socket that failed, failures of the socket that was just replaced are ignored.
+     */
+    @Synchronized
+    private fun scheduleReconnect(webSocket: WebSocket) {
+        if (!mayReconnect || webSocket === replacedSocket || scheduledReconnect?.isDone == false) {
+            return
+        }
+
+        reconnectDelayMillis = ReconnectScheduler.backoff(reconnectsAttempted)
+        scheduledReconnect = ReconnectScheduler.schedule(reconnectDelayMillis) {
+            // The new connection may fail before this task returns, that failure has to be able to schedule again.
+            synchronized(this) {
+                scheduledReconnect = null
+            }
+
+            if (!mayReconnect || open) {
+                return@schedule
+            }
+
+            try {
+                attemptReconnect()
+            } catch (e: RuntimeException) {
+                logger.error("Error while reconnecting ${node.name}", e)
+            }
+        }
+    }
+
     private fun connect() {
         if (socket != null) {
+            replacedSocket = socket
             socket?.close(1000, "New connection requested")
             socket?.cancel()
         }
@@ -260,6 +337,7 @@ class LavalinkSocket(private val node: LavalinkNode) : WebSocketListener(), Clos
 
     override fun close() {
         mayReconnect = false
+        scheduledReconnect?.cancel(false)
         open = false
         node.available = false
         socket?.close(1000, "Client shutdown")
@@ -0,0 +1,149 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.player.LoadResultCacheMetrics
+import dev.arbjerg.lavalink.protocol.v4.LoadResult
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Caches load results by identifier, bounded in size and age.
+ *
+ * Eviction follows W-TinyLFU: new results enter a small LRU window. Results that fall out of the window only replace
+ * the least recently used result of the main area if their key was requested more often recently, according to a
+ * [FrequencySketch]. This keeps popular results around even when many one-off identifiers are loaded.
+ *
+ * Loads of the exact same identifier that miss at the same time share a single request. Only the cache itself compares
+ * normalized identifiers, a shared request must return the result for what each caller actually asked for. Failed loads
+ * are never cached.
+ */
+internal class LoadResultCache(capacity: Int, ttl: Duration) : LoadResultCacheMetrics {
+    private val ttlNanos = ttl.toNanos()
+    private val windowCapacity = maxOf(1, capacity / 100)
+    private val mainCapacity = capacity - windowCapacity
+
+    // Both are guarded by this
+    private val window = LinkedHashMap<String, Entry>(windowCapacity, 0.75f, true)
+    private val main = LinkedHashMap<String, Entry>(mainCapacity, 0.75f, true)
+    private val sketch = FrequencySketch(capacity)
+
+    // Keyed on the identifier that is sent, not the normalized one
+    private val inFlight = ConcurrentHashMap<String, Mono<LoadResult>>()
+
+    private val hitCount = LongAdder()
+    private val missCount = LongAdder()
+    private val sharedCount = LongAdder()
+    private val evictionCount = LongAdder()
+    private val expirationCount = LongAdder()
+
+    override val hits: Long
+        get() = hitCount.sum()
+    override val misses: Long
+        get() = missCount.sum()
+    override val sharedLoads: Long
+        get() = sharedCount.sum()
+    override val evictions: Long
+        get() = evictionCount.sum()
+    override val expirations: Long
+        get() = expirationCount.sum()
+    override val size: Int
+        @Synchronized get() = window.size + main.size
+
+    fun load(identifier: String, loader: (String) -> Mono<LoadResult>): Mono<LoadResult> {
+        return Mono.defer {
+            val key = normalize(identifier)
+            val cached = get(key)
+
+            if (cached != null) {
+                hitCount.increment()
+                return@defer Mono.just(cached)
+            }
+
+            missCount.increment()
+
+            var created = false
+            val request = inFlight.computeIfAbsent(identifier) {
+                created = true
+
+                loader(identifier)
+                    .doOnNext { if (it !is LoadResult.LoadFailed) put(key, it) }
+                    .doFinally { inFlight.remove(identifier) }
+                    .cache()
+            }
+
+            if (!created) {
+                sharedCount.increment()
+            }
+
+            request
+        }
+    }
+
+    @Synchronized
+    private fun get(key: String): LoadResult? {
+        sketch.increment(key)
+
+        val area = if (window.containsKey(key)) window else main
+        val entry = area[key] ?: return null
+
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            area.remove(key)
+            expirationCount.increment()
+            return null
+        }
+
+        return entry.result
+    }
+
+    @Synchronized
+    private fun put(key: String, result: LoadResult) {
+        val entry = Entry(result, System.nanoTime() + ttlNanos)
+
+        if (main.containsKey(key)) {
+            main[key] = entry
+            return
+        }
+
+        window[key] = entry
+
+        if (window.size <= windowCapacity) {
+            return
+        }
+
+        val candidate = window.entries.iterator().let { it.next().also { _ -> it.remove() } }
+
+        if (main.size < mainCapacity) {
+            main[candidate.key] = candidate.value
+            return
+        }
+
+        val victim = main.entries.firstOrNull()
+
+        if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+            main.remove(victim.key)
+            main[candidate.key] = candidate.value
+        }
+
+        evictionCount.increment()
+    }
+
+    private class Entry(val result: LoadResult, val expiresAt: Long)
+
+    companion object {
+        private val SEARCH_PREFIX = Regex("^([a-zA-Z]+search):", RegexOption.IGNORE_CASE)
+        private val WHITESPACE = Regex("\\s+")
+
+        /**
+         * Searches like `ytsearch:` are compared without regard to case and extra whitespace, anything else (urls) is
+         * only trimmed, as those are often case-sensitive.
+         */
+        internal fun normalize(identifier: String): String {
+            val trimmed = identifier.trim()
+            val prefix = SEARCH_PREFIX.find(trimmed) ?: return trimmed
+            val query = trimmed.substring(prefix.range.last + 1).trim().replace(WHITESPACE, " ").lowercase()
+
+            return "${prefix.groupValues[1].lowercase()}:$query"
+        }
+    }
+}
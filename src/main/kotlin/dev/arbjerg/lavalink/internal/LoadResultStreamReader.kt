@@ -0,0 +1,148 @@
+package dev.arbjerg.lavalink.internal
+
+import com.fasterxml.jackson.core.JsonFactory
+import com.fasterxml.jackson.core.JsonParser
+import com.fasterxml.jackson.core.JsonToken
+import dev.arbjerg.lavalink.client.exception.LoadFailedException
+import dev.arbjerg.lavalink.client.player.toCustom
+import dev.arbjerg.lavalink.protocol.v4.Track
+import dev.arbjerg.lavalink.protocol.v4.json
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.io.StringWriter
+import dev.arbjerg.lavalink.protocol.v4.Exception as ProtocolException
+
+/**
+ * Reads the tracks of a load result while the body is still coming in.
+ *
+ * The body is walked with a jackson streaming parser, every track object is copied out on its own and decoded with
+ * the protocol serializers. Nothing is read ahead of [next], so only one track is held in memory at a time and a slow
+ * consumer leaves the rest of the body on the socket.
+ *
+ * Closing the reader closes [body].
+ */
+internal class LoadResultStreamReader(body: InputStream) : Closeable {
+    private val parser = jsonFactory.createParser(body)
+    private var opened = false
+
+    // Positioned in the tracks array once opened, null if there are no more tracks to read.
+    private var tracks: JsonParser? = null
+    private var singleTrack: Track? = null
+
+    /**
+     * Reads the next track.
+     *
+     * @return The next track, or null when all tracks were read.
+     * @throws LoadFailedException If the load result is an error.
+     * @throws IOException If the body could not be read or is not a load result.
+     */
+    fun next(): Track? {
+        if (!opened) {
+            opened = true
+            open()
+        }
+
+        singleTrack?.let {
+            singleTrack = null
+            return it
+        }
+
+        val tracks = tracks ?: return null
+
+        if (tracks.nextToken() == JsonToken.START_OBJECT) {
+            return tracks.readTrack()
+        }
+
+        this.tracks = null
+        return null
+    }
+
+    override fun close() {
+        parser.close()
+    }
+
+    private fun open() {
+        expect(parser.nextToken(), JsonToken.START_OBJECT)
+
+        var loadType: String? = null
+        var bufferedData: String? = null
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            val field = parser.currentName()
+            parser.nextToken()
+
+            when {
+                field == "loadType" -> loadType = parser.text
+                // Lavalink sends the load type first, if it does not the data has to wait for it.
+                field == "data" && loadType == null -> bufferedData = parser.copyToString()
+                field == "data" -> {
+                    openData(parser, loadType!!)
+                    return
+                }
+                else -> parser.skipChildren()
+            }
+        }
+
+        if (bufferedData != null) {
+            val dataParser = jsonFactory.createParser(bufferedData)
+            dataParser.nextToken()
+            openData(dataParser, loadType ?: throw IOException("Load result without a load type"))
+        }
+    }
+
+    private fun openData(parser: JsonParser, loadType: String) {
+        when (loadType) {
+            "track" -> singleTrack = parser.readTrack()
+            "search" -> openTracks(parser)
+            "playlist" -> {
+                expect(parser.currentToken(), JsonToken.START_OBJECT)
+
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    val field = parser.currentName()
+                    parser.nextToken()
+
+                    if (field == "tracks") {
+                        openTracks(parser)
+                        return
+                    }
+
+                    parser.skipChildren()
+                }
+            }
+
+            "error" -> {
+                val exception = json.decodeFromString(ProtocolException.serializer(), parser.copyToString())
+
+                throw LoadFailedException(exception.toCustom())
+            }
+
+            else -> parser.skipChildren()
+        }
+    }
+
+    private fun openTracks(parser: JsonParser) {
+        expect(parser.currentToken(), JsonToken.START_ARRAY)
+        tracks = parser
+    }
+
+    private companion object {
+        val jsonFactory = JsonFactory()
+
+        fun JsonParser.readTrack(): Track = json.decodeFromString(Track.serializer(), copyToString())
+
+        fun JsonParser.copyToString(): String {
+            val writer = StringWriter()
+
+            jsonFactory.createGenerator(writer).use { it.copyCurrentStructure(this) }
+
+            return writer.toString()
+        }
+
+        fun expect(actual: JsonToken?, expected: JsonToken) {
+            if (actual != expected) {
+                throw IOException("Expected $expected in load result but got $actual")
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.event.PlayerReplayCompleteEvent
+import dev.arbjerg.lavalink.client.event.PlayerReplayProgressEvent
+import dev.arbjerg.lavalink.client.player.LavalinkPlayer
+import org.slf4j.LoggerFactory
+import reactor.core.Disposable
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Re-creates cached players on a node after it sent a ready op.
+ *
+ * Players are sent with a cap on concurrent requests and a token bucket rate, so a node that just came back is not hit
+ * with thousands of requests at once. Playing players go first, paused and idle players last.
+ */
+internal class PlayerReplayScheduler(
+    private val node: LavalinkNode,
+    private val concurrency: Int,
+    private val ratePerSecond: Int
+) {
+    private val logger = LoggerFactory.getLogger(PlayerReplayScheduler::class.java)
+
+    @Volatile
+    private var running: Disposable? = null
+
+    fun replay(players: Collection<LavalinkPlayer>) {
+        cancel()
+
+        val ordered = players
+            .filter { player ->
+                // Ignore empty voice states, not sure what causes this
+                val (token, endpoint, sessionId) = player.voiceState
+
+                token.isNotBlank() && endpoint.isNotBlank() && sessionId.isNotBlank()
+            }
+            .sortedBy { it.replayPriority() }
+
+        val total = ordered.size
+        val replayed = AtomicInteger()
+        val failed = AtomicInteger()
+        val progressStep = maxOf(1, total / 100)
+        val bucket = TokenBucket(ratePerSecond.toDouble(), concurrency)
+
+        logger.debug("Replaying {} players on {}", total, node.name)
+
+        running = Flux.fromIterable(ordered)
+            .flatMap({ player ->
+                Mono.defer { Mono.delay(Duration.ofNanos(bucket.reserve())) }
+                    .then(player.stateToBuilder().setNoReplace(false))
+                    .map { true }
+                    .onErrorResume {
+                        logger.warn("Failed to replay player for guild {} on {}", player.guildId, node.name, it)
+                        Mono.just(false)
+                    }
+            }, concurrency)
+            .doOnNext { success ->
+                val done = if (success) {
+                    replayed.incrementAndGet() + failed.get()
+                } else {
+                    failed.incrementAndGet() + replayed.get()
+                }
+
+                if (done % progressStep == 0 && done < total) {
+                    node.dispatchEvent(PlayerReplayProgressEvent(node, replayed.get(), failed.get(), total))
+                }
+            }
+            .doOnComplete {
+                logger.debug("Replayed {} players on {}, {} failed", replayed.get(), node.name, failed.get())
+                node.dispatchEvent(PlayerReplayCompleteEvent(node, replayed.get(), failed.get(), total))
+            }
+            .subscribe()
+    }
+
+    fun cancel() {
+        running?.dispose()
+    }
+
+    private fun LavalinkPlayer.replayPriority() = when {
+        track != null && !paused -> 0
+        track != null -> 1
+        else -> 2
+    }
+}
@@ -0,0 +1,32 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps only the latest [PlayerUpdateEvent] of every guild until it is drained.
+ */
+internal class PlayerUpdateCoalescer {
+    private val latest = ConcurrentHashMap<Long, PlayerUpdateEvent>()
+
+    fun offer(event: PlayerUpdateEvent) {
+        latest[event.guildId] = event
+    }
+
+    /**
+     * Removes and returns the latest update of every guild that was updated since the last drain.
+     */
+    fun drain(): List<PlayerUpdateEvent> {
+        if (latest.isEmpty()) {
+            return emptyList()
+        }
+
+        val drained = ArrayList<PlayerUpdateEvent>(latest.size)
+
+        latest.keys.forEach { guildId ->
+            latest.remove(guildId)?.let { drained.add(it) }
+        }
+
+        return drained
+    }
+}
@@ -0,0 +1,125 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.protocol.v4.Omissible
+import dev.arbjerg.lavalink.protocol.v4.Player
+import dev.arbjerg.lavalink.protocol.v4.PlayerUpdate
+import dev.arbjerg.lavalink.protocol.v4.PlayerUpdateTrack
+import dev.arbjerg.lavalink.protocol.v4.toOmissible
+import reactor.core.publisher.Mono
+import reactor.core.publisher.MonoSink
+import reactor.core.scheduler.Schedulers
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Merges player updates for the same guild that are made within [windowMs] of the first one into a single request.
+ *
+ * Fields are merged the way the node would apply the updates one after the other: a field that is present in a later
+ * update replaces the earlier value, omitted fields keep it. The track is merged field by field as well, unless the
+ * later update changes the track. Then the earlier track, position, end time and user data are dropped, as they only
+ * concerned the track that is replaced. A track change with `noReplace` may leave the current track playing, so it is
+ * never merged into an update that touches the track; the pending update is sent first instead.
+ *
+ * Every merged caller receives the same resulting player.
+ */
+internal class PlayerUpdateMerger(private val rest: LavalinkRestClient, private val windowMs: Long) {
+    private val pending = ConcurrentHashMap<Long, PendingUpdate>()
+
+    fun submit(guildId: Long, update: PlayerUpdate, noReplace: Boolean): Mono<Player> {
+        return Mono.create { sink ->
+            var sendFirst: PendingUpdate? = null
+
+            pending.compute(guildId) { _, existing ->
+                when {
+                    existing == null -> {
+                        Schedulers.parallel().schedule({ flush(guildId) }, windowMs, TimeUnit.MILLISECONDS)
+
+                        PendingUpdate(update, noReplace).apply { sinks.add(sink) }
+                    }
+
+                    noReplace && update.changesTrack() && existing.update.touchesTrack() -> {
+                        // The already scheduled flush sends this one, a bit earlier than the window.
+                        sendFirst = existing
+                        PendingUpdate(update, noReplace).apply { sinks.add(sink) }
+                    }
+
+                    else -> {
+                        existing.merge(update, noReplace)
+                        existing.sinks.add(sink)
+                        existing
+                    }
+                }
+            }
+
+            sendFirst?.let { send(guildId, it) }
+        }
+    }
+
+    private fun flush(guildId: Long) {
+        pending.remove(guildId)?.let { send(guildId, it) }
+    }
+
+    private fun send(guildId: Long, merged: PendingUpdate) {
+        rest.updatePlayer(merged.update, guildId, merged.noReplace).subscribe(
+            { player -> merged.sinks.forEach { it.success(player) } },
+            { error -> merged.sinks.forEach { it.error(error) } }
+        )
+    }
+
+    // Only modified inside compute, which locks the guild's entry.
+    private class PendingUpdate(var update: PlayerUpdate, var noReplace: Boolean) {
+        val sinks = mutableListOf<MonoSink<Player>>()
+
+        fun merge(next: PlayerUpdate, nextNoReplace: Boolean) {
+            val current = update
+            val changesTrack = next.changesTrack()
+
+            update = PlayerUpdate(
+                encodedTrack = if (changesTrack) next.encodedTrack else current.encodedTrack,
+                identifier = if (changesTrack) next.identifier else current.identifier,
+                track = if (changesTrack) next.track else current.track.mergeTrack(next.track),
+                position = if (changesTrack) next.position else current.position.or(next.position),
+                endTime = if (changesTrack) next.endTime else current.endTime.or(next.endTime),
+                volume = current.volume.or(next.volume),
+                paused = current.paused.or(next.paused),
+                filters = current.filters.or(next.filters),
+                voice = current.voice.or(next.voice)
+            )
+
+            // noReplace only concerns the track, so it follows the update that sets the track.
+            if (changesTrack) {
+                noReplace = nextNoReplace
+            }
+        }
+
+        private fun Omissible<PlayerUpdateTrack>.mergeTrack(later: Omissible<PlayerUpdateTrack>): Omissible<PlayerUpdateTrack> {
+            if (this !is Omissible.Present || later !is Omissible.Present) {
+                return or(later)
+            }
+
+            return PlayerUpdateTrack(
+                encoded = value.encoded.or(later.value.encoded),
+                identifier = value.identifier.or(later.value.identifier),
+                userData = value.userData.or(later.value.userData)
+            ).toOmissible()
+        }
+
+        private fun <T> Omissible<T>.or(later: Omissible<T>): Omissible<T> = if (later is Omissible.Present) later else this
+    }
+
+    private companion object {
+        fun PlayerUpdate.changesTrack(): Boolean {
+            val track = track
+
+            return encodedTrack is Omissible.Present || identifier is Omissible.Present ||
+                track is Omissible.Present && (track.value.encoded is Omissible.Present || track.value.identifier is Omissible.Present)
+        }
+
+        fun PlayerUpdate.touchesTrack(): Boolean {
+            val track = track
+
+            return changesTrack() || position is Omissible.Present || endTime is Omissible.Present ||
+                track is Omissible.Present && track.value.userData is Omissible.Present
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package dev.arbjerg.lavalink.internal
+
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.ThreadLocalRandom
+import java.util.concurrent.TimeUnit
+
+/**
+ * A single timer for the reconnects of every node, shared by all clients in the JVM. Reconnects are scheduled when
+ * a connection fails, so the timer is idle while all nodes are connected.
+ */
+internal object ReconnectScheduler {
+    private val executor by lazy {
+        ScheduledThreadPoolExecutor(1) {
+            Thread(it, "lavalink-reconnect-thread").apply { isDaemon = true }
+        }.apply {
+            removeOnCancelPolicy = true
+        }
+    }
+
+    fun schedule(delayMs: Long, task: Runnable): ScheduledFuture<*> {
+        return executor.schedule(task, delayMs, TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Capped exponential backoff with full jitter: a random delay between 0 and `base * 2^attempt`, capped at [maxMs].
+     * The randomness spreads out the reconnects of many clients that lost their connection at the same moment.
+     */
+    fun backoff(attempt: Int, baseMs: Long = RECONNECT_BASE_DELAY_MS, maxMs: Long = RECONNECT_MAX_DELAY_MS): Long {
+        val ceiling = if (attempt >= 30) maxMs else minOf(maxMs, baseMs shl attempt)
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1)
+    }
+}
@@ -0,0 +1,240 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.http.RequestLane
+import dev.arbjerg.lavalink.client.http.RestDispatchMetrics
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Response
+import okhttp3.ResponseBody
+import okio.Buffer
+import okio.BufferedSource
+import okio.ForwardingSource
+import okio.buffer
+import java.io.IOException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Limits the amount of REST requests running on a node, and decides which waiting request goes next.
+ *
+ * Lanes are served in order of priority, but a lane never runs more than its own limit. This way slow track loads
+ * cannot take every slot, and voice updates do not have to wait behind them. A request that has waited for
+ * [queueAgingMs] goes before requests of a higher priority, so a steady stream of player updates cannot starve loads.
+ *
+ * A request holds its slot until the body of its response is closed or read to the end, not just until the response
+ * arrived, as most bodies are decoded while they are read.
+ */
+internal class RestDispatcher(
+    override val maxConcurrentRequests: Int,
+    laneLimits: Map<RequestLane, Int>,
+    queueAgingMs: Long = REST_QUEUE_AGING_MS
+) : RestDispatchMetrics {
+    private val queueAgingNanos = TimeUnit.MILLISECONDS.toNanos(queueAgingMs)
+    private val lanes = RequestLane.entries
+    private val limits = IntArray(lanes.size) { minOf(laneLimits[lanes[it]] ?: maxConcurrentRequests, maxConcurrentRequests) }
+    private val queues = Array(lanes.size) { ArrayDeque<PendingCall>() }
+    private val active = IntArray(lanes.size)
+    private val dispatched = LongArray(lanes.size)
+    private val maxQueueTime = LongArray(lanes.size)
+    private var totalActive = 0
+    private var closed = false
+
+    fun enqueue(lane: RequestLane, call: Call, callback: Callback) {
+        val ready = synchronized(this) {
+            if (!closed) {
+                queues[lane.ordinal].addLast(PendingCall(lane, call, callback, System.nanoTime()))
+                takeReady()
+            } else {
+                null
+            }
+        }
+
+        if (ready == null) {
+            call.cancel()
+            callback.onFailure(call, IOException("Node was closed"))
+            return
+        }
+
+        dispatch(ready)
+    }
+
+    /**
+     * Fails every waiting request, and every request that is enqueued after this. Requests that already started are
+     * left to the caller, who cancels them on the http client.
+     */
+    fun close() {
+        val waiting = synchronized(this) {
+            closed = true
+
+            queues.flatMap { queue -> queue.toList().also { queue.clear() } }
+        }
+
+        waiting.forEach { (_, call, callback) ->
+            call.cancel()
+            callback.onFailure(call, IOException("Node was closed"))
+        }
+    }
+
+    private fun finish(lane: RequestLane) {
+        val ready = synchronized(this) {
+            active[lane.ordinal]--
+            totalActive--
+            takeReady()
+        }
+
+        dispatch(ready)
+    }
+
+    private fun dispatch(ready: Ready) {
+        ready.canceled.forEach { (_, call, callback) -> callback.onFailure(call, IOException("Canceled")) }
+        ready.started.forEach { start(it) }
+    }
+
+    // Must be called while holding the lock.
+    private fun takeReady(): Ready {
+        val ready = Ready()
+
+        while (totalActive < maxConcurrentRequests) {
+            val now = System.nanoTime()
+            val index = nextLane(now) ?: break
+            val next = queues[index].removeFirst()
+
+            // Requests cancelled while they were waiting never take a slot. Failing them here, rather than after they
+            // started, keeps a long run of them from recursing through finish once per request.
+            if (next.call.isCanceled()) {
+                ready.canceled.add(next)
+                continue
+            }
+
+            active[index]++
+            totalActive++
+            dispatched[index]++
+            maxQueueTime[index] = maxOf(maxQueueTime[index], now - next.queuedAt)
+            ready.started.add(next)
+        }
+
+        return ready
+    }
+
+    // Must be called while holding the lock.
+    private fun nextLane(now: Long): Int? {
+        var oldest: Int? = null
+
+        for (index in lanes.indices) {
+            val head = queues[index].firstOrNull() ?: continue
+
+            if (active[index] < limits[index] && (oldest == null || head.queuedAt < queues[oldest].first().queuedAt)) {
+                oldest = index
+            }
+        }
+
+        if (oldest != null && now - queues[oldest].first().queuedAt >= queueAgingNanos) {
+            return oldest
+        }
+
+        return lanes.indices.firstOrNull { queues[it].isNotEmpty() && active[it] < limits[it] }
+    }
+
+    private fun start(pending: PendingCall) {
+        val (lane, call, callback) = pending
+
+        // okhttp reports calls it refuses, such as ones cancelled after they were taken from the queue or after the
+        // node was closed, through onFailure on its own thread as well.
+        call.enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                try {
+                    callback.onFailure(call, e)
+                } finally {
+                    finish(lane)
+                }
+            }
+
+            override fun onResponse(call: Call, response: Response) {
+                val released = AtomicBoolean()
+                val release = { if (released.compareAndSet(false, true)) finish(lane) }
+                val body = response.body
+
+                if (body == null) {
+                    try {
+                        callback.onResponse(call, response)
+                    } finally {
+                        release()
+                    }
+                    return
+                }
+
+                val tracked = response.newBuilder().body(ReleasingBody(body, release)).build()
+
+                try {
+                    callback.onResponse(call, tracked)
+                } catch (e: Throwable) {
+                    tracked.close()
+                    throw e
+                }
+            }
+        })
+    }
+
+    @Synchronized
+    override fun queuedRequests(lane: RequestLane) = queues[lane.ordinal].size
+
+    @Synchronized
+    override fun activeRequests(lane: RequestLane) = active[lane.ordinal]
+
+    @Synchronized
+    override fun dispatchedRequests(lane: RequestLane) = dispatched[lane.ordinal]
+
+    @Synchronized
+    override fun maxQueueTimeNanos(lane: RequestLane) = maxQueueTime[lane.ordinal]
+
+    @Synchronized
+    override fun resetMaxQueueTime() = maxQueueTime.fill(0)
+
+    /**
+     * Runs [release] once the body is closed or read to the end.
+     */
+    private class ReleasingBody(private val delegate: ResponseBody, private val release: () -> Unit) : ResponseBody() {
+        private val source by lazy {
+            object : ForwardingSource(delegate.source()) {
+                override fun read(sink: Buffer, byteCount: Long): Long {
+                    val read = super.read(sink, byteCount)
+
+                    if (read == -1L) {
+                        release()
+                    }
+
+                    return read
+                }
+
+                override fun close() {
+                    try {
+                        super.close()
+                    } finally {
+                        release()
+                    }
+                }
+            }.buffer()
+        }
+
+        override fun contentType() = delegate.contentType()
+
+        override fun contentLength() = delegate.contentLength()
+
+        override fun source(): BufferedSource = source
+
+        override fun close() {
+            try {
+                delegate.close()
+            } finally {
+                release()
+            }
+        }
+    }
+
+    private class Ready {
+        val started = mutableListOf<PendingCall>()
+        val canceled = mutableListOf<PendingCall>()
+    }
+
+    private data class PendingCall(val lane: RequestLane, val call: Call, val callback: Callback, val queuedAt: Long)
+}
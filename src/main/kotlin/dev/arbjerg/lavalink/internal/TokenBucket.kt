@@ -0,0 +1,32 @@
+package dev.arbjerg.lavalink.internal
+
+/**
+ * A token bucket that hands out reservations instead of blocking.
+ *
+ * @param ratePerSecond The amount of tokens added every second
+ * @param burst The maximum amount of tokens the bucket holds
+ */
+internal class TokenBucket(private val ratePerSecond: Double, private val burst: Int) {
+    private var tokens = burst.toDouble()
+    private var lastRefill = System.nanoTime()
+
+    /**
+     * Takes a token from the bucket, which may go into debt.
+     *
+     * @return The amount of nanoseconds to wait before the token may be used.
+     */
+    @Synchronized
+    fun reserve(): Long {
+        val now = System.nanoTime()
+
+        tokens = minOf(burst.toDouble(), tokens + (now - lastRefill) / 1_000_000_000.0 * ratePerSecond)
+        lastRefill = now
+        tokens -= 1
+
+        if (tokens >= 0) {
+            return 0
+        }
+
+        return (-tokens / ratePerSecond * 1_000_000_000.0).toLong()
+    }
+}
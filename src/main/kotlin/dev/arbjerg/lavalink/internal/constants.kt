@@ -2,3 +2,8 @@ package dev.arbjerg.lavalink.internal
 
 internal const val TIMEOUT_MS = 10000L
 internal const val METRIC_MAX_HISTORY = 100
+internal const val PENDING_ASSIGNMENT_TIMEOUT_MS = 15000L
+internal const val RECONNECT_BASE_DELAY_MS = 1000L
+internal const val RECONNECT_MAX_DELAY_MS = 60000L
+internal const val OFFLOAD_DECODE_THRESHOLD_BYTES = 64 * 1024L
+internal const val REST_QUEUE_AGING_MS = 500L
@@ -0,0 +1,45 @@
+package dev.arbjerg.lavalink.internal.loadbalancing
+
+/**
+ * Keeps an exponentially weighted moving average and a tail percentile of latency samples.
+ *
+ * The tail is taken from the last [window] samples and only recomputed when it is read after new samples came in.
+ */
+internal class LatencyTracker(private val window: Int = 128, private val alpha: Double = 0.2) {
+    private val samples = LongArray(window)
+    private var sampleCount = 0
+    private var next = 0
+    private var average = -1.0
+    private var tail = -1L
+    private var tailStale = false
+
+    @Synchronized
+    fun record(nanos: Long) {
+        samples[next] = nanos
+        next = (next + 1) % window
+        sampleCount = minOf(sampleCount + 1, window)
+        average = if (average < 0) nanos.toDouble() else average + alpha * (nanos - average)
+        tailStale = true
+    }
+
+    /**
+     * @return the moving average in nanoseconds, or -1 when nothing was recorded yet.
+     */
+    @Synchronized
+    fun averageNanos(): Long = average.toLong()
+
+    /**
+     * @return the 99th percentile of the recent samples in nanoseconds, or -1 when nothing was recorded yet.
+     */
+    @Synchronized
+    fun tailNanos(): Long {
+        if (tailStale) {
+            val sorted = samples.copyOf(sampleCount).apply { sort() }
+
+            tail = sorted[minOf(sampleCount - 1, (sampleCount * 0.99).toInt())]
+            tailStale = false
+        }
+
+        return tail
+    }
+}
@@ -1,40 +1,139 @@
 package dev.arbjerg.lavalink.internal.loadbalancing
 
 import dev.arbjerg.lavalink.internal.METRIC_MAX_HISTORY
-import java.text.SimpleDateFormat
-import java.util.Date
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.LongAdder
 
-class MetricService {
-    private val dateFormat = SimpleDateFormat("yyyy-MM-dd HH:mm")
+/**
+ * Counts metrics over a sliding window of [METRIC_MAX_HISTORY] minutes.
+ *
+ * Every minute gets a slot in a ring indexed by epoch minute. Tracking a metric only increments a striped counter of
+ * the current slot, which is safe to do from any thread. When a minute is over its slot is closed: the counts are
+ * frozen and added to running totals, which get them subtracted again once the slot falls out of the window.
+ * Reading the window is therefore the running totals plus the current slot, independent of the history size.
+ */
+class MetricService internal constructor(private val clock: () -> Long) {
+    constructor() : this(System::currentTimeMillis)
 
-    // timestamp to metric
-    private val timeMap = LRUCache<String, MutableMap<MetricType, Int>>(METRIC_MAX_HISTORY)
+    private val metricTypes = MetricType.values()
 
-    fun trackMetric(metric: MetricType) {
-        val timestamp = dateFormat.format(Date())
-        val metricMap = timeMap.getOrPut(timestamp) { mutableMapOf() }
+    // Totals of the closed slots that are still in the window.
+    private val closedTotals = AtomicLongArray(metricTypes.size)
+
+    // Closed slots by epoch minute modulo the history size, guarded by this.
+    private val ring = arrayOfNulls<Slot>(METRIC_MAX_HISTORY)
+    private var expiredUntil: Long
+
+    @Volatile
+    private var current: Slot
 
-        val currMetric = metricMap[metric] ?: 0
+    init {
+        val minute = currentMinute()
 
-        metricMap[metric] = currMetric + 1
+        current = Slot(minute)
+        expiredUntil = minute - METRIC_MAX_HISTORY
+    }
+
+    fun trackMetric(metric: MetricType) {
+        slotFor(currentMinute()).counters[metric.ordinal].increment()
     }
 
     fun getCurrentMetrics(): Map<MetricType, Int> {
-        val metricMap = mutableMapOf<MetricType, Int>()
+        val slot = slotFor(currentMinute())
+
+        return metricTypes.associateWith {
+            (closedTotals[it.ordinal] + slot.counters[it.ordinal].sum()).toInt()
+        }
+    }
+
+    @Synchronized
+    internal fun resetMetrics() {
+        val minute = currentMinute()
 
-        // there's probably a better way to do this
-        timeMap.values.forEach {
-            it.forEach { (metric, value) ->
-                val currMetric = metricMap[metric] ?: 0
+        ring.fill(null)
+
+        for (i in metricTypes.indices) {
+            closedTotals[i] = 0
+        }
+
+        current = Slot(minute)
+        expiredUntil = minute - METRIC_MAX_HISTORY
+    }
+
+    private fun slotFor(minute: Long): Slot {
+        val slot = current
+
+        // If the clock went back we keep counting in the newest slot.
+        return if (slot.minute >= minute) slot else advance(minute)
+    }
+
+    @Synchronized
+    private fun advance(minute: Long): Slot {
+        val previous = current
+
+        if (previous.minute >= minute) {
+            return previous
+        }
 
-                metricMap[metric] = currMetric + value
+        previous.close()
+
+        val expireUntil = minute - METRIC_MAX_HISTORY
+
+        if (expireUntil - expiredUntil >= METRIC_MAX_HISTORY) {
+            // Idle for longer than the window, nothing in the ring counts anymore.
+            ring.fill(null)
+
+            for (i in metricTypes.indices) {
+                closedTotals[i] = 0
+            }
+        } else {
+            // Slots are not closed every minute, so any slot in the ring may have fallen out of the window.
+            for (index in ring.indices) {
+                val expired = ring[index] ?: continue
+
+                if (expired.minute <= expireUntil) {
+                    for (i in metricTypes.indices) {
+                        closedTotals.addAndGet(i, -expired.closedCounts[i])
+                    }
+
+                    ring[index] = null
+                }
+            }
+        }
+
+        expiredUntil = maxOf(expiredUntil, expireUntil)
+
+        // Only added after expiring, its index may still hold a slot from a full window ago.
+        if (previous.minute > expireUntil) {
+            for (i in metricTypes.indices) {
+                closedTotals.addAndGet(i, previous.closedCounts[i])
             }
+
+            ring[ringIndex(previous.minute)] = previous
         }
 
-        return metricMap
+        val next = Slot(minute)
+
+        current = next
+
+        return next
     }
 
-    internal fun resetMetrics() {
-        timeMap.clear()
+    private fun ringIndex(minute: Long) = Math.floorMod(minute, METRIC_MAX_HISTORY.toLong()).toInt()
+
+    private fun currentMinute() = clock() / 60_000
+
+    private inner class Slot(val minute: Long) {
+        val counters = Array(metricTypes.size) { LongAdder() }
+
+        // The counts at the moment the slot was closed. Late increments from threads that still saw this slot as
+        // current are not part of the totals, which keeps adding and removing the slot symmetrical.
+        val closedCounts = LongArray(metricTypes.size)
+
+        fun close() {
+            for (i in counters.indices) {
+                closedCounts[i] = counters[i].sum()
+            }
+        }
     }
 }
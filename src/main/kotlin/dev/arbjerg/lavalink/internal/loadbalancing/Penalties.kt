@@ -3,6 +3,8 @@ package dev.arbjerg.lavalink.internal.loadbalancing
 import dev.arbjerg.lavalink.client.LavalinkNode
 import dev.arbjerg.lavalink.client.loadbalancing.MAX_ERROR
 import dev.arbjerg.lavalink.protocol.v4.Message
+import dev.arbjerg.lavalink.internal.PENDING_ASSIGNMENT_TIMEOUT_MS
+import java.util.concurrent.atomic.AtomicLong
 import kotlin.math.max
 import kotlin.math.pow
 
@@ -16,9 +18,51 @@ import kotlin.math.pow
 // loads failed per minute
 data class Penalties(val node: LavalinkNode) {
     private val metricService = MetricService()
+    private val version = AtomicLong()
+    private val pendingAssignments = PendingAssignments(PENDING_ASSIGNMENT_TIMEOUT_MS)
+    private val pendingVersion = AtomicLong()
+
+    @Volatile
+    private var cached: CachedTotal? = null
+
+    /**
+     * Increases every time one of the inputs of [calculateTotal] changes, which allows load balancers to cache
+     * anything derived from the total.
+     */
+    val inputVersion: Long
+        get() = version.get() + pendingVersion.get()
+
+    /**
+     * The amount of guilds that were assigned to this node, but do not have a player on it yet.
+     */
+    val pendingAssignmentCount: Int
+        get() = pendingAssignments.count()
 
     internal fun resetMetrics() {
         metricService.resetMetrics()
+        invalidate()
+    }
+
+    /**
+     * Marks the cached total as stale, called when stats, players or track events change.
+     */
+    internal fun invalidate() {
+        version.incrementAndGet()
+    }
+
+    /**
+     * Counts a guild towards the penalty until it has a player on the node, so guilds that are assigned in quick
+     * succession do not all see the same total.
+     */
+    internal fun addPendingAssignment(guildId: Long) {
+        pendingAssignments.add(guildId)
+        pendingVersion.incrementAndGet()
+    }
+
+    internal fun confirmAssignment(guildId: Long) {
+        if (pendingAssignments.confirm(guildId)) {
+            pendingVersion.incrementAndGet()
+        }
     }
 
     fun handleTrackEvent(event: Message.EmittedEvent) {
@@ -45,9 +89,36 @@ data class Penalties(val node: LavalinkNode) {
                 // Ignore everything else
             }
         }
+
+        // Track start and end events also change which players are playing.
+        invalidate()
     }
 
+    /**
+     * Calculates the penalty of the node, lower is better. The total is only recalculated when the stats, the cached
+     * players or the track metrics of the node changed, or when a minute passed and old metrics have to be dropped.
+     */
     fun calculateTotal(): Int {
+        // Read the version before anything else, a change during the calculation then causes a recalculation next time.
+        val currentVersion = version.get()
+        val minute = System.currentTimeMillis() / 60_000
+        val current = cached
+        val total = if (current != null && current.version == currentVersion && current.minute == minute) {
+            current.total
+        } else {
+            calculateUncachedTotal().also { cached = CachedTotal(currentVersion, minute, it) }
+        }
+
+        if (total >= MAX_ERROR) {
+            return total
+        }
+
+        // Pending assignments change much more often than the rest, they are not part of the cached total.
+        // Like playing players, each one is a penalty point.
+        return total + pendingAssignments.count()
+    }
+
+    private fun calculateUncachedTotal(): Int {
         val stats = node.stats
 
         if (!node.available || stats == null) {
@@ -93,4 +164,6 @@ data class Penalties(val node: LavalinkNode) {
 
         return playerPenalty + cpuPenalty + deficitFramePenalty + nullFramePenalty + trackStuckPenalty + trackExceptionPenalty + loadFailedPenalty
     }
+
+    private class CachedTotal(val version: Long, val minute: Long, val total: Int)
 }
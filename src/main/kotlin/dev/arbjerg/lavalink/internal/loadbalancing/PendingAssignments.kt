@@ -0,0 +1,52 @@
+package dev.arbjerg.lavalink.internal.loadbalancing
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * Guilds that were assigned to a node, but do not have a player on it yet.
+ *
+ * An assignment ends when it is confirmed or after [timeoutMs]. All assignments share the same timeout, so they
+ * expire in the order they were added and only the head of the queue has to be checked.
+ */
+internal class PendingAssignments(timeoutMs: Long) {
+    private val timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs)
+
+    // guild id to deadline
+    private val deadlines = ConcurrentHashMap<Long, Long>()
+    private val expiryQueue = ConcurrentLinkedQueue<Expiry>()
+
+    fun add(guildId: Long) {
+        val deadline = System.nanoTime() + timeoutNanos
+
+        deadlines[guildId] = deadline
+        expiryQueue.add(Expiry(guildId, deadline))
+    }
+
+    /**
+     * @return true if the guild was pending.
+     */
+    fun confirm(guildId: Long): Boolean = deadlines.remove(guildId) != null
+
+    fun count(): Int {
+        val now = System.nanoTime()
+
+        while (true) {
+            val head = expiryQueue.peek() ?: break
+
+            if (head.deadline - now > 0) {
+                break
+            }
+
+            if (expiryQueue.remove(head)) {
+                // Only remove the guild if it was not added again since.
+                deadlines.remove(head.guildId, head.deadline)
+            }
+        }
+
+        return deadlines.size
+    }
+
+    private class Expiry(val guildId: Long, val deadline: Long)
+}
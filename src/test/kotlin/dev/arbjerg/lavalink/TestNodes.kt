@@ -0,0 +1,41 @@
+package dev.arbjerg.lavalink
+
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.NodeOptions
+
+/**
+ * Adds a node that points to a port nothing listens on, for tests that need a node but no server.
+ */
+internal fun LavalinkClient.addOfflineNode(
+    name: String = "test",
+    configure: NodeOptions.Builder.() -> Unit = {}
+): LavalinkNode = addTestNode("http://127.0.0.1:1", name, configure)
+
+/**
+ * Adds a node for REST requests to [serverUri], without a websocket connection.
+ */
+internal fun LavalinkClient.addTestNode(
+    serverUri: String,
+    name: String = "test",
+    configure: NodeOptions.Builder.() -> Unit = {}
+): LavalinkNode {
+    val options = NodeOptions.Builder()
+        .setName(name)
+        .setServerUri(serverUri)
+        .setPassword("youshallnotpass")
+        .apply(configure)
+        .build()
+
+    val node = addNode(options)
+
+    node.ws.close()
+
+    // Wait for the failed connection attempt to be reported, so it can't reset anything the test sets up.
+    val deadline = System.nanoTime() + 5_000_000_000
+    while (node.httpClient.dispatcher.runningCallsCount() > 0 && System.nanoTime() < deadline) {
+        Thread.sleep(1)
+    }
+
+    return node
+}
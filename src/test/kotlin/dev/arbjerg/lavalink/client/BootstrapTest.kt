@@ -0,0 +1,52 @@
+package dev.arbjerg.lavalink.client
+
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class BootstrapTest {
+    private val client = LavalinkClient(1L)
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    @AfterTest
+    fun close() {
+        client.close()
+        server.stop(0)
+    }
+
+    @Test
+    fun `connections are warmed up before the node is ready`() {
+        val warmedUp = CountDownLatch(1)
+
+        server.createContext("/v4/info") {
+            warmedUp.countDown()
+            it.sendResponseHeaders(500, -1)
+            it.close()
+        }
+        // Without a websocket the node never receives its ready op.
+        server.createContext("/") {
+            it.sendResponseHeaders(404, -1)
+            it.close()
+        }
+        server.start()
+
+        val options = NodeOptions.Builder()
+            .setName("test")
+            .setServerUri("http://127.0.0.1:${server.address.port}")
+            .setPassword("youshallnotpass")
+            .build()
+
+        val nodes = client.bootstrap(listOf(options))
+
+        assertTrue(warmedUp.await(5, TimeUnit.SECONDS))
+        assertFalse(client.nodes.single().available)
+        assertFailsWith<IllegalStateException> { nodes.block(Duration.ofMillis(100)) }
+    }
+}
@@ -0,0 +1,70 @@
+package dev.arbjerg.lavalink.client
+
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import dev.arbjerg.lavalink.protocol.v4.PlayerState
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertTrue
+
+class EventDispatchTest {
+    private val client = LavalinkClient(1L, ClientOptions.Builder().setEventDispatchThreads(4).build())
+    private val node = client.addOfflineNode()
+
+    private val guildA = 1L
+
+    // Any guild that is dispatched on a different thread than guild A.
+    private val guildB = generateSequence(2L) { it + 1 }
+        .first { client.eventDispatcher.stripeFor(it) != client.eventDispatcher.stripeFor(guildA) }
+
+    @AfterTest
+    fun close() {
+        client.close()
+    }
+
+    private fun update(guildId: Long) = PlayerUpdateEvent(node, guildId, PlayerState(0, 0, true, 0))
+
+    @Test
+    fun `a blocked client listener does not delay other guilds`() {
+        val release = CountDownLatch(1)
+        val blocked = CountDownLatch(1)
+        val received = CountDownLatch(1)
+
+        client.on(PlayerUpdateEvent::class.java, guildA).subscribe {
+            blocked.countDown()
+            release.await()
+        }
+        client.on(PlayerUpdateEvent::class.java, guildB).subscribe { received.countDown() }
+
+        node.dispatchEvent(update(guildA))
+        assertTrue(blocked.await(5, TimeUnit.SECONDS), "listener of guild A was not called")
+
+        node.dispatchEvent(update(guildB))
+        assertTrue(received.await(5, TimeUnit.SECONDS), "guild B was delayed by the listener of guild A")
+
+        release.countDown()
+    }
+
+    @Test
+    fun `a blocked node listener does not delay client listeners of other guilds`() {
+        val release = CountDownLatch(1)
+        val blocked = CountDownLatch(1)
+        val received = CountDownLatch(1)
+
+        node.on(PlayerUpdateEvent::class.java, guildA).subscribe {
+            blocked.countDown()
+            release.await()
+        }
+        client.on(PlayerUpdateEvent::class.java).filter { it.guildId == guildB }.subscribe { received.countDown() }
+
+        node.dispatchEvent(update(guildA))
+        assertTrue(blocked.await(5, TimeUnit.SECONDS), "listener of guild A was not called")
+
+        node.dispatchEvent(update(guildB))
+        assertTrue(received.await(5, TimeUnit.SECONDS), "guild B was delayed by the listener of guild A")
+
+        release.countDown()
+    }
+}
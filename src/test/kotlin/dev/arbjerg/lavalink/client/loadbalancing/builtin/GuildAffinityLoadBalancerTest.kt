@@ -0,0 +1,113 @@
+package dev.arbjerg.lavalink.client.loadbalancing.builtin
+
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.protocol.v4.Cpu
+import dev.arbjerg.lavalink.protocol.v4.Memory
+import dev.arbjerg.lavalink.protocol.v4.StatsData
+import kotlin.random.Random
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+/**
+ * Simulates placing guilds one after the other, where every placed guild counts as a player on its node.
+ */
+class GuildAffinityLoadBalancerTest {
+    private val client = LavalinkClient(1L)
+    private val nodes = (0 until NODES).map { index -> addNode("node-$index") }
+    private val guilds = Random(42).let { random -> List(GUILDS) { random.nextLong() } }
+
+    @AfterTest
+    fun close() {
+        client.close()
+    }
+
+    private fun addNode(name: String): LavalinkNode {
+        return client.addOfflineNode(name).apply {
+            setPlayers(0)
+            available = true
+        }
+    }
+
+    private fun LavalinkNode.setPlayers(players: Int) {
+        stats = StatsData(null, players, 0, 0, Memory(0, 0, 0, 0), Cpu(1, 0.0, 0.0))
+    }
+
+    /**
+     * @return the node every guild was placed on.
+     */
+    private fun simulate(balancer: GuildAffinityLoadBalancer): Map<Long, LavalinkNode> {
+        val load = HashMap<LavalinkNode, Int>()
+
+        return guilds.associateWith { guildId ->
+            balancer.selectNode(null, guildId).also { node ->
+                node.setPlayers(load.merge(node, 1, Int::plus)!!)
+            }
+        }
+    }
+
+    @Test
+    fun `a guild is always placed on the same node`() {
+        val placed = simulate(GuildAffinityLoadBalancer(client))
+        val balancer = GuildAffinityLoadBalancer(client)
+
+        // Placing the guilds again with the final loads, and with a new balancer, changes nothing for guilds that fit.
+        val moved = guilds.count { balancer.selectNode(null, it) != placed.getValue(it) }
+
+        assertTrue(moved < GUILDS / 100, "$moved of $GUILDS guilds were placed on another node")
+        guilds.take(100).forEach { assertEquals(balancer.selectNode(null, it), balancer.selectNode(null, it)) }
+    }
+
+    @Test
+    fun `no node is filled above its share`() {
+        val bounded = simulate(GuildAffinityLoadBalancer(client, 1.0)).values.groupingBy { it }.eachCount()
+        nodes.forEach { it.setPlayers(0) }
+        val unbounded = simulate(GuildAffinityLoadBalancer(client, 1000.0)).values.groupingBy { it }.eachCount()
+
+        assertTrue(bounded.values.max() <= GUILDS / NODES, "bounded loads: ${bounded.values}")
+        assertTrue(unbounded.values.max() > GUILDS / NODES, "unbounded loads: ${unbounded.values}")
+    }
+
+    @Test
+    fun `guilds spill over from a full node`() {
+        val full = nodes.first()
+        full.setPlayers(GUILDS)
+
+        val placed = simulate(GuildAffinityLoadBalancer(client))
+
+        assertTrue(placed.values.none { it == full }, "guilds were placed on the full node")
+    }
+
+    @Test
+    fun `guilds without a player yet count towards the load`() {
+        val full = nodes.first()
+        repeat(GUILDS) { full.penalties.addPendingAssignment(-1L - it) }
+
+        val balancer = GuildAffinityLoadBalancer(client)
+        val placed = guilds.map { balancer.selectNode(null, it) }
+
+        assertTrue(placed.none { it == full }, "guilds were placed on the node with pending assignments")
+    }
+
+    @Test
+    fun `adding a node moves about one in n guilds to it`() {
+        val balancer = GuildAffinityLoadBalancer(client)
+        val before = guilds.associateWith { balancer.selectNode(null, it) }
+        val added = addNode("node-$NODES")
+        val after = guilds.associateWith { balancer.selectNode(null, it) }
+
+        val moved = guilds.filter { before[it] != after[it] }
+        val fraction = moved.size.toDouble() / GUILDS
+
+        assertTrue(moved.all { after[it] == added }, "guilds moved between the old nodes")
+        assertTrue(fraction in 0.8 / (NODES + 1)..1.2 / (NODES + 1), "$fraction of the guilds moved")
+    }
+
+    private companion object {
+        const val NODES = 9
+        const val GUILDS = 9_000
+    }
+}
@@ -0,0 +1,68 @@
+package dev.arbjerg.lavalink.client.loadbalancing.builtin
+
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.protocol.v4.Cpu
+import dev.arbjerg.lavalink.protocol.v4.Memory
+import dev.arbjerg.lavalink.protocol.v4.StatsData
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertTrue
+
+/**
+ * Simulates placing players one after the other, where every placed player adds one penalty point to its node.
+ */
+class PowerOfTwoChoicesLoadBalancerTest {
+    private val client = LavalinkClient(1L)
+    private val nodes = (0 until NODES).map { index ->
+        client.addOfflineNode("node-$index").apply {
+            stats = StatsData(null, 0, 0, 0, Memory(0, 0, 0, 0), Cpu(1, 0.0, 0.0))
+            available = true
+        }
+    }
+
+    @AfterTest
+    fun close() {
+        client.close()
+    }
+
+    /**
+     * @return the highest load of a node minus the average load.
+     */
+    private fun simulate(choices: Int): Int {
+        val load = HashMap<LavalinkNode, Int>()
+        val balancer = PowerOfTwoChoicesLoadBalancer(client, choices)
+
+        balancer.addPenaltyProvider { node, _ -> load[node] ?: 0 }
+
+        repeat(PLAYERS) {
+            val node = balancer.selectNode(null, null)
+            load.merge(node, 1, Int::plus)
+        }
+
+        return nodes.maxOf { load[it] ?: 0 } - PLAYERS / NODES
+    }
+
+    @Test
+    fun `two choices keep the maximum load close to the average`() {
+        val gap = simulate(2)
+
+        // The expected gap is ln(ln(n)) / ln(2) + O(1), a handful of players at most.
+        assertTrue(gap <= 10, "max load was $gap above the average")
+    }
+
+    @Test
+    fun `two choices spread better than one`() {
+        val single = simulate(1)
+        val two = simulate(2)
+
+        // A single random choice is off by about the square root of the average load.
+        assertTrue(two < single, "two choices: $two above average, one choice: $single above average")
+    }
+
+    private companion object {
+        const val NODES = 20
+        const val PLAYERS = 20_000
+    }
+}
@@ -0,0 +1,124 @@
+package dev.arbjerg.lavalink.client.player
+
+import dev.arbjerg.lavalink.protocol.v4.Track as ProtocolTrack
+import dev.arbjerg.lavalink.protocol.v4.json
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+/**
+ * Each track is encoded in the lavaplayer message format of its version. The expected values are given as the
+ * `/v4/decodetrack` response for that track, which the local decoder has to match.
+ */
+class TrackDecoderTest {
+    private fun assertDecodesLikeNode(encoded: String, nodeResponse: String) {
+        val expected = json.decodeFromString<ProtocolTrack>(nodeResponse)
+        val track = assertNotNull(TrackDecoder.decode(encoded))
+
+        assertEquals(expected.encoded, track.encoded)
+        assertEquals(expected.info, track.info)
+    }
+
+    @Test
+    fun `decodes version 3`() {
+        val encoded = "QAAA5wMAPFJpY2sgQXN0bGV5IC0gTmV2ZXIgR29ubmEgR2l2ZSBZb3UgVXAgKE9mZmljaWFsIE11c2ljIFZpZGVvKQALUmljayBBc3RsZXkAAAAAAAM8IAALZFF3NHc5V2dYY1EAAQAraHR0cHM6Ly93d3cueW91dHViZS5jb20vd2F0Y2g/dj1kUXc0dzlXZ1hjUQEANGh0dHBzOi8vaS55dGltZy5jb20vdmkvZFF3NHc5V2dYY1EvbWF4cmVzZGVmYXVsdC5qcGcBAAxHQkFSTDkzMDAxMzUAB3lvdXR1YmUAAAAAAAAAAA=="
+
+        assertDecodesLikeNode(
+            encoded,
+            """
+            {
+              "encoded": "$encoded",
+              "info": {
+                "identifier": "dQw4w9WgXcQ",
+                "isSeekable": true,
+                "author": "Rick Astley",
+                "length": 212000,
+                "isStream": false,
+                "position": 0,
+                "title": "Rick Astley - Never Gonna Give You Up (Official Music Video)",
+                "uri": "https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+                "sourceName": "youtube",
+                "artworkUrl": "https://i.ytimg.com/vi/dQw4w9WgXcQ/maxresdefault.jpg",
+                "isrc": "GBARL9300135"
+              },
+              "pluginInfo": {},
+              "userData": {}
+            }
+            """
+        )
+    }
+
+    @Test
+    fun `decodes version 2 with source specific data`() {
+        val encoded = "QAAAeQIADVVua25vd24gdGl0bGUADlVua25vd24gYXJ0aXN0AAAAAAAC0qgAHGh0dHBzOi8vZXhhbXBsZS5jb20vc29uZy5tcDMAAQAcaHR0cHM6Ly9leGFtcGxlLmNvbS9zb25nLm1wMwAEaHR0cAADbXAzAAAAAAAAdTA="
+
+        assertDecodesLikeNode(
+            encoded,
+            """
+            {
+              "encoded": "$encoded",
+              "info": {
+                "identifier": "https://example.com/song.mp3",
+                "isSeekable": true,
+                "author": "Unknown artist",
+                "length": 185000,
+                "isStream": false,
+                "position": 30000,
+                "title": "Unknown title",
+                "uri": "https://example.com/song.mp3",
+                "sourceName": "http",
+                "artworkUrl": null,
+                "isrc": null
+              },
+              "pluginInfo": {},
+              "userData": {}
+            }
+            """
+        )
+    }
+
+    @Test
+    fun `decodes version 1`() {
+        val encoded = "AAAAUgAKTG9maSByYWRpbwAMU29tZSBTdGF0aW9uf/////////8AGmh0dHBzOi8vZXhhbXBsZS5jb20vc3RyZWFtAQAEaHR0cAADbXAzAAAAAAAAAAA="
+
+        assertDecodesLikeNode(
+            encoded,
+            """
+            {
+              "encoded": "$encoded",
+              "info": {
+                "identifier": "https://example.com/stream",
+                "isSeekable": false,
+                "author": "Some Station",
+                "length": 9223372036854775807,
+                "isStream": true,
+                "position": 0,
+                "title": "Lofi radio",
+                "uri": null,
+                "sourceName": "http",
+                "artworkUrl": null,
+                "isrc": null
+              },
+              "pluginInfo": {},
+              "userData": {}
+            }
+            """
+        )
+    }
+
+    @Test
+    fun `unsupported versions are left to the node`() {
+        // The version 3 track above with its version byte set to 4
+        val encoded = "QAAA5wQAPFJpY2sgQXN0bGV5IC0gTmV2ZXIgR29ubmEgR2l2ZSBZb3UgVXAgKE9mZmljaWFsIE11c2ljIFZpZGVvKQALUmljayBBc3RsZXkAAAAAAAM8IAALZFF3NHc5V2dYY1EAAQAraHR0cHM6Ly93d3cueW91dHViZS5jb20vd2F0Y2g/dj1kUXc0dzlXZ1hjUQEANGh0dHBzOi8vaS55dGltZy5jb20vdmkvZFF3NHc5V2dYY1EvbWF4cmVzZGVmYXVsdC5qcGcBAAxHQkFSTDkzMDAxMzUAB3lvdXR1YmUAAAAAAAAAAA=="
+
+        assertNull(TrackDecoder.decode(encoded))
+    }
+
+    @Test
+    fun `invalid input is left to the node`() {
+        assertNull(TrackDecoder.decode("not base64!"))
+        assertNull(TrackDecoder.decode("QAAA5wM="))
+        assertNull(TrackDecoder.decode(""))
+    }
+}
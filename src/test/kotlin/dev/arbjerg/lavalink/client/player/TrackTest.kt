@@ -0,0 +1,52 @@
+package dev.arbjerg.lavalink.client.player
+
+import com.fasterxml.jackson.databind.node.ObjectNode
+import dev.arbjerg.lavalink.protocol.v4.Track as ProtocolTrack
+import dev.arbjerg.lavalink.protocol.v4.TrackInfo
+import kotlinx.serialization.json.JsonObject
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class TrackTest {
+    private fun track(): Track {
+        val info = TrackInfo("id", true, "author", 1000, false, 0, "title", null, "http", null, null)
+
+        return ProtocolTrack("encoded", info, JsonObject(mapOf()), JsonObject(mapOf())).toCustom()
+    }
+
+    @Test
+    fun `changing the returned user data does not change the track`() {
+        val track = track()
+        track.setUserData(mapOf("requester" to 1))
+
+        (track.userData as ObjectNode).put("requester", 2)
+
+        assertEquals(1, track.userData["requester"].asInt())
+        assertEquals(mapOf("requester" to 1), track.getUserData(Map::class.java))
+    }
+
+    @Test
+    fun `user data follows every change`() {
+        val track = track()
+        assertTrue(track.userData.isEmpty)
+
+        track.setUserData(mapOf("requester" to 1))
+        assertEquals(1, track.userData["requester"].asInt())
+
+        track.setUserData(mapOf("requester" to 2))
+        assertEquals(2, track.userData["requester"].asInt())
+    }
+
+    @Test
+    fun `clones keep their own user data`() {
+        val track = track()
+        track.setUserData(mapOf("requester" to 1))
+
+        val clone = track.makeClone()
+        clone.setUserData(mapOf("requester" to 2))
+
+        assertEquals(1, track.userData["requester"].asInt())
+        assertEquals(2, clone.userData["requester"].asInt())
+    }
+}
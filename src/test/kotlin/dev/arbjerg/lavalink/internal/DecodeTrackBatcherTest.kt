@@ -0,0 +1,109 @@
+package dev.arbjerg.lavalink.internal
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.addTestNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.http.RequestLane
+import dev.arbjerg.lavalink.internal.error.RestException
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertIs
+
+class DecodeTrackBatcherTest {
+    private val client = LavalinkClient(1L)
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    private val batchRequests = AtomicInteger()
+    private val singleRequests = AtomicInteger()
+
+    @AfterTest
+    fun close() {
+        client.close()
+        server.stop(0)
+    }
+
+    private fun HttpExchange.respond(status: Int, body: String) {
+        val bytes = body.toByteArray()
+        responseHeaders.add("Content-Type", "application/json")
+        sendResponseHeaders(status, bytes.size.toLong())
+        responseBody.use { it.write(bytes) }
+    }
+
+    private fun error(status: Int, path: String) =
+        """{"timestamp":0,"status":$status,"error":"Bad Request","message":"Invalid track","path":"$path"}"""
+
+    private fun track(encoded: String) = """
+        {
+          "encoded": "$encoded",
+          "info": {
+            "identifier": "$encoded",
+            "isSeekable": true,
+            "author": "author",
+            "length": 1000,
+            "isStream": false,
+            "position": 0,
+            "title": "title",
+            "uri": null,
+            "sourceName": "http",
+            "artworkUrl": null,
+            "isrc": null
+          },
+          "pluginInfo": {},
+          "userData": {}
+        }
+    """
+
+    private fun <T : Any> CompletableFuture<T?>.await(): T = get(5, TimeUnit.SECONDS)!!
+
+    private fun CompletableFuture<*>.awaitError(): Throwable = assertFailsWith<ExecutionException> { get(5, TimeUnit.SECONDS) }.cause!!
+
+    @Test
+    fun `rejected batches are decoded one by one`() {
+        server.createContext("/v4/decodetracks") {
+            batchRequests.incrementAndGet()
+            it.respond(400, error(400, "/v4/decodetracks"))
+        }
+        server.createContext("/v4/decodetrack") {
+            singleRequests.incrementAndGet()
+            val encoded = it.requestURI.query.substringAfter("encodedTrack=")
+
+            if (encoded == "broken") {
+                it.respond(400, error(400, "/v4/decodetrack"))
+            } else {
+                it.respond(200, track(encoded))
+            }
+        }
+        server.start()
+
+        val node = client.addTestNode("http://127.0.0.1:${server.address.port}")
+        val batcher = DecodeTrackBatcher(node.rest, 1000, 2)
+
+        val good = batcher.decode("good").toFuture()
+        val broken = batcher.decode("broken").toFuture()
+
+        assertEquals("good", good.await().encoded)
+        assertIs<RestException>(broken.awaitError())
+        assertEquals(1, batchRequests.get())
+        assertEquals(2, singleRequests.get())
+    }
+
+    @Test
+    fun `transport errors fail every waiting decode`() {
+        val node = client.addOfflineNode()
+        val batcher = DecodeTrackBatcher(node.rest, 1000, 3)
+
+        val decodes = List(3) { batcher.decode("track$it").toFuture() }
+
+        decodes.forEach { assertIs<IOException>(it.awaitError()) }
+        assertEquals(1, node.restDispatchMetrics.dispatchedRequests(RequestLane.LOADING))
+    }
+}
@@ -0,0 +1,154 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.client.ClientOptions
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.event.ClientEvent
+import dev.arbjerg.lavalink.client.event.EventBufferPolicy
+import dev.arbjerg.lavalink.client.event.PlayerUpdateEvent
+import dev.arbjerg.lavalink.client.event.StatsEvent
+import dev.arbjerg.lavalink.protocol.v4.Cpu
+import dev.arbjerg.lavalink.protocol.v4.Memory
+import dev.arbjerg.lavalink.protocol.v4.PlayerState
+import org.reactivestreams.Subscription
+import reactor.core.publisher.BaseSubscriber
+import reactor.core.publisher.Sinks
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class EventBufferingTest {
+    private val options = ClientOptions.Builder()
+        .setEventSinkBufferSize(4)
+        .setEventBufferPolicy(PlayerUpdateEvent::class.java, EventBufferPolicy.latestWins(10))
+        .build()
+    private val client = LavalinkClient(1L, options)
+    private val node = client.addOfflineNode()
+
+    @AfterTest
+    fun close() {
+        client.close()
+    }
+
+    private fun update(position: Long) = PlayerUpdateEvent(node, 1L, PlayerState(0, position, true, 0))
+
+    private fun stats(players: Int) = StatsEvent(node, null, players, 0, 0, Memory(0, 0, 0, 0), Cpu(1, 0.0, 0.0))
+
+    /**
+     * Requests nothing until [requestAll] is called.
+     */
+    private class PausedSubscriber : BaseSubscriber<ClientEvent>() {
+        val received = CopyOnWriteArrayList<ClientEvent>()
+
+        override fun hookOnSubscribe(subscription: Subscription) {}
+
+        override fun hookOnNext(value: ClientEvent) {
+            received.add(value)
+        }
+
+        fun requestAll() = request(Long.MAX_VALUE)
+    }
+
+    @Test
+    fun `listeners without demand keep only what the policy allows`() {
+        val router = EventRouter(options)
+        val subscriber = PausedSubscriber()
+
+        router.subscribe(ClientEvent::class.java, null).subscribe(subscriber)
+
+        (0L until 100L).forEach { router.route(update(it)) }
+        (0 until 100).forEach { router.route(stats(it)) }
+        subscriber.requestAll()
+
+        val updates = subscriber.received.filterIsInstance<PlayerUpdateEvent>()
+        val stats = subscriber.received.filterIsInstance<StatsEvent>()
+
+        assertEquals((90L until 100L).toList(), updates.map { it.state.position })
+        assertEquals((0 until 100).toList(), stats.map { it.players })
+    }
+
+    @Test
+    fun `listener overflow shows up in the client metrics`() {
+        val subscriber = PausedSubscriber()
+        client.on<PlayerUpdateEvent>().subscribe(subscriber)
+
+        (0L until 100L).forEach { client.routeEvent(update(it)) }
+
+        assertEquals(90L, client.emitterMetrics.listenerDroppedEvents[PlayerUpdateEvent::class.java])
+        assertEquals(10, client.emitterMetrics.listenerBufferedEvents[PlayerUpdateEvent::class.java])
+        // The client flux itself keeps up, only the listener overflowed.
+        assertEquals(null, client.emitterMetrics.droppedEvents[PlayerUpdateEvent::class.java]?.takeIf { it > 0 })
+
+        subscriber.requestAll()
+        assertEquals(0, client.emitterMetrics.listenerBufferedEvents[PlayerUpdateEvent::class.java])
+
+        subscriber.dispose()
+        assertEquals(90L, client.emitterMetrics.listenerDroppedEvents[PlayerUpdateEvent::class.java])
+        assertEquals(null, client.emitterMetrics.listenerBufferedEvents[PlayerUpdateEvent::class.java])
+    }
+
+    @Test
+    fun `blocked listeners keep only what the policy allows`() {
+        val router = EventRouter(options)
+        val release = CountDownLatch(1)
+        val blocked = CountDownLatch(1)
+        val received = CopyOnWriteArrayList<ClientEvent>()
+
+        router.subscribe(ClientEvent::class.java, null).subscribe {
+            blocked.countDown()
+            release.await()
+            received.add(it)
+        }
+
+        // The first event blocks the listener on this thread, the rest arrive from another one.
+        Thread { router.route(stats(-1)) }.start()
+        assertTrue(blocked.await(5, TimeUnit.SECONDS))
+
+        (0L until 100L).forEach { router.route(update(it)) }
+        (0 until 100).forEach { router.route(stats(it)) }
+        release.countDown()
+
+        // The other thread drains the buffer once it is released.
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (received.size < 111 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        val updates = received.filterIsInstance<PlayerUpdateEvent>()
+        val stats = received.filterIsInstance<StatsEvent>()
+
+        assertEquals((90L until 100L).toList(), updates.map { it.state.position })
+        assertEquals((-1 until 100).toList(), stats.map { it.players })
+    }
+
+    @Test
+    fun `never drop events survive a full sink`() {
+        val sink = Sinks.many().multicast().onBackpressureBuffer<ClientEvent>(options.eventSinkBufferSize, false)
+        val emitter = EventEmitter(sink, "test", options)
+        val subscriber = PausedSubscriber()
+
+        sink.asFlux().subscribe(subscriber)
+
+        (0 until 100).forEach { emitter.emit(stats(it)) }
+        (0L until 100L).forEach { emitter.emit(update(it)) }
+
+        assertEquals(null, emitter.droppedEvents[StatsEvent::class.java]?.takeIf { it > 0 })
+        subscriber.requestAll()
+
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (subscriber.received.size < 110 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+
+        val updates = subscriber.received.filterIsInstance<PlayerUpdateEvent>()
+        val stats = subscriber.received.filterIsInstance<StatsEvent>()
+
+        assertEquals((0 until 100).toList(), stats.map { it.players })
+        assertEquals((90L until 100L).toList(), updates.map { it.state.position })
+        assertEquals(90L, emitter.droppedEvents[PlayerUpdateEvent::class.java])
+    }
+}
@@ -0,0 +1,127 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.protocol.v4.Message
+import dev.arbjerg.lavalink.protocol.v4.json
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+class FastMessageDecoderTest {
+    private val client = LavalinkClient(1L)
+    private val node = client.addOfflineNode()
+
+    @AfterTest
+    fun close() {
+        client.close()
+    }
+
+    private fun assertPlayerUpdateMatches(text: String) {
+        val expected = json.decodeFromString<Message>(text) as Message.PlayerUpdateEvent
+        val actual = assertNotNull(FastMessageDecoder.decodePlayerUpdate(node, text))
+
+        assertEquals(expected.guildId, actual.guildId.toString())
+        assertEquals(expected.state, actual.state)
+        assertEquals(Message.Op.PlayerUpdate, FastMessageDecoder.sniffOp(text))
+    }
+
+    private fun assertStatsMatches(text: String) {
+        val expected = json.decodeFromString<Message>(text) as Message.StatsEvent
+        val actual = assertNotNull(FastMessageDecoder.decodeStats(text))
+
+        assertEquals(expected, Message.StatsEvent(actual))
+        assertEquals(Message.Op.Stats, FastMessageDecoder.sniffOp(text))
+    }
+
+    @Test
+    fun `player update matches the generic decoder`() {
+        assertPlayerUpdateMatches(
+            """{"op":"playerUpdate","guildId":"123456789012345678","state":{"time":1700000000000,"position":6000,"connected":true,"ping":41}}"""
+        )
+    }
+
+    @Test
+    fun `player update with a 19 digit guild id`() {
+        assertPlayerUpdateMatches(
+            """{"op":"playerUpdate","guildId":"1234567890123456789","state":{"time":1,"position":0,"connected":false,"ping":-1}}"""
+        )
+    }
+
+    @Test
+    fun `player update with reordered fields and whitespace`() {
+        assertPlayerUpdateMatches(
+            """ { "state" : { "ping" : 0 , "connected" : true , "position" : 10 , "time" : 5 } , "guildId" : "42" , "op" : "playerUpdate" } """
+        )
+    }
+
+    @Test
+    fun `player update with unknown fields`() {
+        assertPlayerUpdateMatches(
+            """{"op":"playerUpdate","extra":{"a":[1,2,{"b":"}"}],"c":null},"guildId":"42","state":{"time":1,"position":2,"connected":true,"ping":3,"new":[true,false]},"flag":false,"n":-1.5e3}"""
+        )
+    }
+
+    @Test
+    fun `escaped strings in unknown fields are skipped`() {
+        assertPlayerUpdateMatches(
+            """{"op":"playerUpdate","note":"quote \" and \\ and é","guildId":"42","state":{"time":1,"position":2,"connected":true,"ping":3}}"""
+        )
+    }
+
+    @Test
+    fun `escaped keys fall back to the generic decoder`() {
+        val text = """{"op":"playerUpdate","gu\u0069ldId":"42","state":{"time":1,"position":2,"connected":true,"ping":3}}"""
+
+        assertNull(FastMessageDecoder.decodePlayerUpdate(node, text))
+        assertEquals("42", (json.decodeFromString<Message>(text) as Message.PlayerUpdateEvent).guildId)
+    }
+
+    @Test
+    fun `guild ids that overflow a long fall back to the generic decoder`() {
+        val text = """{"op":"playerUpdate","guildId":"9223372036854775808","state":{"time":1,"position":2,"connected":true,"ping":3}}"""
+
+        assertNull(FastMessageDecoder.decodePlayerUpdate(node, text))
+    }
+
+    @Test
+    fun `stats match the generic decoder`() {
+        assertStatsMatches(
+            """{"op":"stats","players":3,"playingPlayers":2,"uptime":123456789,"memory":{"free":1,"used":2,"allocated":3,"reservable":4},"cpu":{"cores":8,"systemLoad":0.25,"lavalinkLoad":1.5E-3},"frameStats":{"sent":3000,"nulled":2,"deficit":-1}}"""
+        )
+    }
+
+    @Test
+    fun `stats with null frame stats`() {
+        assertStatsMatches(
+            """{"op":"stats","frameStats":null,"players":0,"playingPlayers":0,"uptime":1,"memory":{"free":1,"used":2,"allocated":3,"reservable":4},"cpu":{"cores":1,"systemLoad":0,"lavalinkLoad":0}}"""
+        )
+    }
+
+    @Test
+    fun `stats with reordered and unknown fields`() {
+        assertStatsMatches(
+            """{"cpu":{"lavalinkLoad":0.1,"cores":2,"systemLoad":0.2,"temp":null},"uptime":9,"memory":{"reservable":4,"allocated":3,"used":2,"free":1},"playingPlayers":1,"op":"stats","players":1,"frameStats":null,"unknown":{"x":"y"}}"""
+        )
+    }
+
+    @Test
+    fun `encoded round trip matches`() {
+        val stats = json.decodeFromString<Message>(
+            """{"op":"stats","players":3,"playingPlayers":2,"uptime":1,"memory":{"free":1,"used":2,"allocated":3,"reservable":4},"cpu":{"cores":8,"systemLoad":0.5,"lavalinkLoad":0.25},"frameStats":null}"""
+        )
+
+        assertStatsMatches(json.encodeToString(Message.serializer(), stats))
+    }
+
+    @Test
+    fun `other ops are not handled`() {
+        assertEquals(Message.Op.Ready, FastMessageDecoder.sniffOp("""{"op":"ready","resumed":false,"sessionId":"abc"}"""))
+        assertNull(FastMessageDecoder.sniffOp("""{"op":"unknown"}"""))
+        assertNull(FastMessageDecoder.decodePlayerUpdate(node, """{"op":"playerUpdate","guildId":"1"}"""))
+        assertNull(FastMessageDecoder.decodeStats("""{"op":"stats","players":1}"""))
+        assertNull(FastMessageDecoder.decodeStats("""not json"""))
+    }
+}
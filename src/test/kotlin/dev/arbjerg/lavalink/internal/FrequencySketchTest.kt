@@ -0,0 +1,41 @@
+package dev.arbjerg.lavalink.internal
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertTrue
+
+class FrequencySketchTest {
+    @Test
+    fun `counts increments`() {
+        val sketch = FrequencySketch(64)
+
+        repeat(3) { sketch.increment("a") }
+        sketch.increment("b")
+
+        assertEquals(3, sketch.frequency("a"))
+        assertEquals(1, sketch.frequency("b"))
+        assertEquals(0, sketch.frequency("c"))
+    }
+
+    @Test
+    fun `counters saturate`() {
+        val sketch = FrequencySketch(64)
+
+        repeat(100) { sketch.increment("a") }
+
+        assertEquals(15, sketch.frequency("a"))
+    }
+
+    @Test
+    fun `old popularity fades out`() {
+        val sketch = FrequencySketch(64)
+
+        repeat(8) { sketch.increment("old") }
+
+        // 650 more additions, which is enough to halve all counters once
+        repeat(50) { key -> repeat(13) { sketch.increment("key$key") } }
+
+        assertEquals(4, sketch.frequency("old"))
+        assertTrue(sketch.frequency("key0") < 13)
+    }
+}
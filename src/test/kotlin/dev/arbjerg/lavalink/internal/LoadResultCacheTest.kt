@@ -0,0 +1,135 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.protocol.v4.LoadResult
+import dev.arbjerg.lavalink.protocol.v4.Exception as ProtocolException
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import java.time.Duration
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertSame
+
+class LoadResultCacheTest {
+    private val loaded = mutableListOf<String>()
+
+    private fun result() = LoadResult.SearchResult(LoadResult.SearchResult.Data(emptyList()))
+
+    private fun LoadResultCache.loadNow(identifier: String): LoadResult = load(identifier) {
+        loaded += it
+        Mono.just(result())
+    }.block()!!
+
+    @Test
+    fun `searches are normalized`() {
+        assertEquals("ytsearch:never gonna give you up", LoadResultCache.normalize("  YTSearch: Never  Gonna\tGive You Up "))
+        assertEquals("scsearch:a b", LoadResultCache.normalize("scsearch:A b"))
+    }
+
+    @Test
+    fun `urls are only trimmed`() {
+        assertEquals("https://youtu.be/dQw4w9WgXcQ", LoadResultCache.normalize(" https://youtu.be/dQw4w9WgXcQ "))
+        assertEquals("https://example.com/A  B", LoadResultCache.normalize("https://example.com/A  B"))
+    }
+
+    @Test
+    fun `normalized searches hit the cache`() {
+        val cache = LoadResultCache(100, Duration.ofMinutes(1))
+
+        val first = cache.loadNow("ytsearch:Foo  Bar")
+        val second = cache.loadNow(" YTSEARCH:foo bar")
+
+        assertSame(first, second)
+        assertEquals(listOf("ytsearch:Foo  Bar"), loaded)
+        assertEquals(1, cache.hits)
+        assertEquals(1, cache.misses)
+    }
+
+    @Test
+    fun `in-flight loads are only shared for the identifier that is sent`() {
+        val cache = LoadResultCache(100, Duration.ofMinutes(1))
+        val pending = mutableMapOf<String, Sinks.One<LoadResult>>()
+        val loader = { identifier: String ->
+            loaded += identifier
+            Sinks.one<LoadResult>().also { pending[identifier] = it }.asMono()
+        }
+
+        val results = mutableListOf<LoadResult>()
+        cache.load("ytsearch:Foo", loader).subscribe { results += it }
+        cache.load("ytsearch:Foo", loader).subscribe { results += it }
+        cache.load("ytsearch:FOO", loader).subscribe { results += it }
+
+        assertEquals(listOf("ytsearch:Foo", "ytsearch:FOO"), loaded)
+        assertEquals(1, cache.sharedLoads)
+
+        val foo = result()
+        val upperFoo = result()
+        pending.getValue("ytsearch:Foo").tryEmitValue(foo)
+        pending.getValue("ytsearch:FOO").tryEmitValue(upperFoo)
+
+        assertEquals(3, results.size)
+        assertSame(foo, results[0])
+        assertSame(foo, results[1])
+        assertSame(upperFoo, results[2])
+    }
+
+    @Test
+    fun `failed loads are not cached`() {
+        val cache = LoadResultCache(100, Duration.ofMinutes(1))
+        val failed = LoadResult.LoadFailed(ProtocolException("nope", ProtocolException.Severity.COMMON, "nope"))
+
+        cache.load("ytsearch:foo") {
+            loaded += it
+            Mono.just(failed)
+        }.block()
+        cache.loadNow("ytsearch:foo")
+
+        assertEquals(listOf("ytsearch:foo", "ytsearch:foo"), loaded)
+        assertEquals(0, cache.hits)
+        assertEquals(1, cache.size)
+    }
+
+    @Test
+    fun `one-off loads do not evict popular results`() {
+        // One entry in the window, 99 in the main area
+        val cache = LoadResultCache(100, Duration.ofMinutes(1))
+
+        repeat(100) { cache.loadNow("key$it") }
+        repeat(5) { cache.loadNow("key0") }
+        val hitsBefore = cache.hits
+
+        repeat(50) { cache.loadNow("once$it") }
+
+        cache.loadNow("key0")
+        assertEquals(hitsBefore + 1, cache.hits)
+        assertEquals(100, cache.size)
+    }
+
+    @Test
+    fun `frequently requested results are admitted to the main area`() {
+        val cache = LoadResultCache(100, Duration.ofMinutes(1))
+
+        repeat(100) { cache.loadNow("key$it") }
+
+        // Misses still count towards the popularity of a key
+        repeat(5) { cache.load("hot") { Mono.empty() }.block() }
+        cache.loadNow("hot")
+        cache.loadNow("next")
+
+        val hitsBefore = cache.hits
+        cache.loadNow("hot")
+        assertEquals(hitsBefore + 1, cache.hits)
+        assertEquals(100, cache.size)
+    }
+
+    @Test
+    fun `results expire`() {
+        val cache = LoadResultCache(100, Duration.ofNanos(1))
+
+        cache.loadNow("key")
+        Thread.sleep(1)
+        cache.loadNow("key")
+
+        assertEquals(listOf("key", "key"), loaded)
+        assertEquals(1, cache.expirations)
+    }
+}
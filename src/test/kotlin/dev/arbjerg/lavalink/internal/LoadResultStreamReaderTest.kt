@@ -0,0 +1,173 @@
+package dev.arbjerg.lavalink.internal
+
+import com.sun.net.httpserver.HttpServer
+import dev.arbjerg.lavalink.addTestNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.client.LavalinkNode
+import dev.arbjerg.lavalink.client.http.RequestLane
+import dev.arbjerg.lavalink.client.exception.LoadFailedException
+import dev.arbjerg.lavalink.protocol.v4.Track
+import org.reactivestreams.Subscription
+import reactor.core.publisher.BaseSubscriber
+import reactor.core.scheduler.Schedulers
+import java.io.ByteArrayInputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.net.InetSocketAddress
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class LoadResultStreamReaderTest {
+    private val client = LavalinkClient(1L)
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    @AfterTest
+    fun close() {
+        client.close()
+        server.stop(0)
+    }
+
+    private fun track(identifier: String) =
+        """{"encoded":"QAAA","info":{"identifier":"$identifier","isSeekable":true,"author":"author","length":1000,"isStream":false,"position":0,"title":"title","uri":null,"sourceName":"http","artworkUrl":null,"isrc":null},"pluginInfo":{},"userData":{}}"""
+
+    private fun playlist(size: Int) = List(size) { track("track$it") }.joinToString(
+        ",",
+        """{"loadType":"playlist","data":{"info":{"name":"playlist","selectedTrack":-1},"pluginInfo":{},"tracks":[""",
+        """],"after":true}}"""
+    )
+
+    private fun readAll(body: String): List<String> = LoadResultStreamReader(body.byteInputStream()).use { reader ->
+        generateSequence { reader.next() }.map { it.info.identifier }.toList()
+    }
+
+    @Test
+    fun `reads every load type`() {
+        assertEquals(listOf("a"), readAll("""{"loadType":"track","data":${track("a")}}"""))
+        assertEquals(listOf("a", "b"), readAll("""{"loadType":"search","data":[${track("a")},${track("b")}]}"""))
+        assertEquals(listOf("track0", "track1", "track2"), readAll(playlist(3)))
+        assertEquals(emptyList(), readAll("""{"loadType":"empty","data":{}}"""))
+    }
+
+    @Test
+    fun `reads data sent before the load type`() {
+        assertEquals(listOf("a", "b"), readAll("""{"data":[${track("a")},${track("b")}],"loadType":"search"}"""))
+    }
+
+    @Test
+    fun `failed loads throw`() {
+        val error = assertFailsWith<LoadFailedException> {
+            readAll("""{"loadType":"error","data":{"message":"Not found","severity":"common","cause":"nope"}}""")
+        }
+
+        assertEquals("Not found", error.message)
+    }
+
+    @Test
+    fun `reads only as far as tracks are requested`() {
+        val body = playlist(1000).toByteArray()
+        var read = 0L
+        val input: InputStream = object : FilterInputStream(ByteArrayInputStream(body)) {
+            override fun read(b: ByteArray, off: Int, len: Int) = super.read(b, off, len).also { if (it > 0) read += it }
+        }
+
+        LoadResultStreamReader(input).use { reader ->
+            assertEquals("track0", reader.next()?.info?.identifier)
+            assertTrue(read < body.size / 10, "read $read of ${body.size} bytes")
+
+            repeat(999) { reader.next() }
+            assertNull(reader.next())
+        }
+    }
+
+    private fun servePlaylist() {
+        server.createContext("/v4/loadtracks") {
+            val bytes = playlist(1000).toByteArray()
+            it.responseHeaders.add("Content-Type", "application/json")
+            it.sendResponseHeaders(200, 0)
+            it.responseBody.use { out -> out.write(bytes) }
+        }
+        server.start()
+    }
+
+    private fun LavalinkNode.awaitIdleStreams() {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (restDispatchMetrics.activeRequests(RequestLane.STREAMING) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    fun `streaming loads follow the demand of the subscriber`() {
+        servePlaylist()
+
+        // Reading the playlist takes longer than this, which must not fail the load.
+        val node = client.addTestNode("http://127.0.0.1:${server.address.port}") { setHttpTimeout(200) }
+        val received = CopyOnWriteArrayList<Track>()
+        val first = CountDownLatch(1)
+        val done = CountDownLatch(1)
+
+        val subscriber = object : BaseSubscriber<Track>() {
+            override fun hookOnSubscribe(subscription: Subscription) = request(1)
+
+            override fun hookOnNext(value: Track) {
+                received += value
+                first.countDown()
+            }
+
+            override fun hookOnComplete() = done.countDown()
+        }
+
+        node.rest.loadItemStreaming("playlist").subscribe(subscriber)
+
+        assertTrue(first.await(5, TimeUnit.SECONDS))
+        Thread.sleep(400)
+        assertEquals(1, received.size)
+        assertEquals(1, node.restDispatchMetrics.activeRequests(RequestLane.STREAMING))
+
+        subscriber.request(Long.MAX_VALUE)
+
+        assertTrue(done.await(5, TimeUnit.SECONDS))
+        assertEquals(1000, received.size)
+        assertEquals("track999", received.last().info.identifier)
+
+        node.awaitIdleStreams()
+        assertEquals(0, node.restDispatchMetrics.activeRequests(RequestLane.STREAMING))
+    }
+
+    @Test
+    fun `cancelling before the tracks are read releases the response`() {
+        servePlaylist()
+
+        val node = client.addTestNode("http://127.0.0.1:${server.address.port}")
+        val dropped = CountDownLatch(1)
+
+        // Simulates the subscriber cancelling before the read was started on boundedElastic, which then never runs.
+        Schedulers.onScheduleHook("drop-read") { task ->
+            if (Thread.currentThread().name.startsWith("OkHttp") && dropped.count > 0) {
+                dropped.countDown()
+                Runnable {}
+            } else {
+                task
+            }
+        }
+
+        try {
+            val subscription = node.rest.loadItemStreaming("playlist").subscribe()
+
+            assertTrue(dropped.await(5, TimeUnit.SECONDS))
+            subscription.dispose()
+        } finally {
+            Schedulers.resetOnScheduleHook("drop-read")
+        }
+
+        node.awaitIdleStreams()
+        assertEquals(0, node.restDispatchMetrics.activeRequests(RequestLane.STREAMING))
+    }
+}
@@ -0,0 +1,133 @@
+package dev.arbjerg.lavalink.internal
+
+import com.sun.net.httpserver.HttpServer
+import dev.arbjerg.lavalink.addTestNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import dev.arbjerg.lavalink.protocol.v4.Omissible
+import dev.arbjerg.lavalink.protocol.v4.PlayerUpdate
+import dev.arbjerg.lavalink.protocol.v4.PlayerUpdateTrack
+import dev.arbjerg.lavalink.protocol.v4.toOmissible
+import kotlinx.serialization.json.Json
+import kotlinx.serialization.json.JsonObject
+import kotlinx.serialization.json.JsonPrimitive
+import kotlinx.serialization.json.jsonObject
+import java.net.InetSocketAddress
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class PlayerUpdateMergerTest {
+    private val client = LavalinkClient(1L)
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    private val requests = CopyOnWriteArrayList<Pair<String, JsonObject>>()
+    private val merger: PlayerUpdateMerger
+
+    init {
+        server.createContext("/v4/sessions/") {
+            val body = it.requestBody.readBytes().decodeToString()
+            requests += it.requestURI.query to Json.parseToJsonElement(body).jsonObject
+
+            val player = """{"guildId":"1","track":null,"volume":100,"paused":false,"state":{"time":0,"position":0,"connected":false,"ping":-1},"voice":{"token":"","endpoint":"","sessionId":""},"filters":{}}"""
+                .toByteArray()
+            it.responseHeaders.add("Content-Type", "application/json")
+            it.sendResponseHeaders(200, player.size.toLong())
+            it.responseBody.use { out -> out.write(player) }
+        }
+        server.start()
+
+        merger = PlayerUpdateMerger(client.addTestNode("http://127.0.0.1:${server.address.port}").rest, 100)
+    }
+
+    @AfterTest
+    fun close() {
+        client.close()
+        server.stop(0)
+    }
+
+    private fun submit(update: PlayerUpdate, noReplace: Boolean = false): CompletableFuture<*> =
+        merger.submit(1L, update, noReplace).toFuture()
+
+    private fun submitAll(vararg updates: Pair<PlayerUpdate, Boolean>) {
+        val results = updates.map { (update, noReplace) -> submit(update, noReplace) }
+
+        results.forEach { it.get(5, TimeUnit.SECONDS) }
+    }
+
+    private fun track(encoded: String? = null, userData: Map<String, Int>? = null) = PlayerUpdateTrack(
+        encoded = if (encoded != null) Omissible.of(encoded) else Omissible.Omitted(),
+        userData = if (userData != null) {
+            JsonObject(userData.mapValues { JsonPrimitive(it.value) }).toOmissible()
+        } else {
+            Omissible.Omitted()
+        }
+    ).toOmissible()
+
+    private fun json(value: String) = Json.parseToJsonElement(value).jsonObject
+
+    @Test
+    fun `later fields replace earlier ones`() {
+        submitAll(
+            PlayerUpdate(volume = 50.toOmissible(), paused = true.toOmissible()) to false,
+            PlayerUpdate(volume = 80.toOmissible()) to false
+        )
+
+        assertEquals(listOf("noReplace=false" to json("""{"volume":80,"paused":true}""")), requests)
+    }
+
+    @Test
+    fun `user data is merged into the earlier track`() {
+        submitAll(
+            PlayerUpdate(track = track(encoded = "A")) to false,
+            PlayerUpdate(track = track(userData = mapOf("b" to 2)), position = 1000L.toOmissible()) to false
+        )
+
+        assertEquals(
+            listOf("noReplace=false" to json("""{"track":{"encoded":"A","userData":{"b":2}},"position":1000}""")),
+            requests
+        )
+    }
+
+    @Test
+    fun `a track change drops what concerned the earlier track`() {
+        submitAll(
+            PlayerUpdate(
+                track = track(encoded = "A", userData = mapOf("a" to 1)),
+                position = 5000L.toOmissible(),
+                endTime = 9000L.toOmissible(),
+                volume = 50.toOmissible()
+            ) to true,
+            PlayerUpdate(track = track(encoded = "B")) to false
+        )
+
+        assertEquals(listOf("noReplace=false" to json("""{"track":{"encoded":"B"},"volume":50}""")), requests)
+    }
+
+    @Test
+    fun `a track change without replacing is sent after an update that touches the track`() {
+        submitAll(
+            PlayerUpdate(position = 5000L.toOmissible()) to false,
+            PlayerUpdate(track = track(encoded = "B")) to true
+        )
+
+        assertEquals(
+            listOf(
+                "noReplace=false" to json("""{"position":5000}"""),
+                "noReplace=true" to json("""{"track":{"encoded":"B"}}""")
+            ),
+            requests
+        )
+    }
+
+    @Test
+    fun `a track change without replacing is merged with unrelated updates`() {
+        submitAll(
+            PlayerUpdate(volume = 50.toOmissible()) to false,
+            PlayerUpdate(track = track(encoded = "B")) to true
+        )
+
+        assertEquals(listOf("noReplace=true" to json("""{"track":{"encoded":"B"},"volume":50}""")), requests)
+    }
+}
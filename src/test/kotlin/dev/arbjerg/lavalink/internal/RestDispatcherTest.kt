@@ -0,0 +1,182 @@
+package dev.arbjerg.lavalink.internal
+
+import dev.arbjerg.lavalink.client.http.RequestLane
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.Protocol
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.ResponseBody.Companion.toResponseBody
+import okio.Timeout
+import java.io.IOException
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class RestDispatcherTest {
+    private val started = mutableListOf<FakeCall>()
+    private val responses = mutableListOf<Response>()
+    private val failures = mutableListOf<Pair<String, IOException>>()
+
+    private inner class FakeCall(val name: String) : Call {
+        private val request = Request.Builder().url("http://127.0.0.1/$name").build()
+        private var callback: Callback? = null
+        private var canceled = false
+
+        fun respond(body: String = "body") {
+            callback!!.onResponse(
+                this,
+                Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(body.toResponseBody())
+                    .build()
+            )
+        }
+
+        fun fail() = callback!!.onFailure(this, IOException("Failed"))
+
+        override fun request() = request
+        override fun execute() = throw UnsupportedOperationException()
+        override fun enqueue(responseCallback: Callback) {
+            callback = responseCallback
+            started += this
+        }
+
+        override fun cancel() {
+            canceled = true
+        }
+
+        override fun isExecuted() = callback != null
+        override fun isCanceled() = canceled
+        override fun timeout() = Timeout.NONE
+        override fun clone() = FakeCall(name)
+    }
+
+    private val keepResponse = object : Callback {
+        override fun onFailure(call: Call, e: IOException) {
+            failures += (call as FakeCall).name to e
+        }
+
+        override fun onResponse(call: Call, response: Response) {
+            responses += response
+        }
+    }
+
+    private fun RestDispatcher.enqueue(lane: RequestLane, name: String) = FakeCall(name).also { enqueue(lane, it, keepResponse) }
+
+    private fun names() = started.map { it.name }
+
+    @Test
+    fun `higher lanes go first`() {
+        val dispatcher = RestDispatcher(1, emptyMap())
+
+        val first = dispatcher.enqueue(RequestLane.LOADING, "load1")
+        dispatcher.enqueue(RequestLane.LOADING, "load2")
+        dispatcher.enqueue(RequestLane.VOICE, "voice")
+
+        first.fail()
+
+        assertEquals(listOf("load1", "voice"), names())
+    }
+
+    @Test
+    fun `the slot is held until the body is closed`() {
+        val dispatcher = RestDispatcher(1, emptyMap())
+
+        val first = dispatcher.enqueue(RequestLane.PLAYBACK, "first")
+        dispatcher.enqueue(RequestLane.PLAYBACK, "second")
+
+        first.respond()
+        assertEquals(listOf("first"), names())
+        assertEquals(1, dispatcher.activeRequests(RequestLane.PLAYBACK))
+
+        responses.single().close()
+        assertEquals(listOf("first", "second"), names())
+
+        // Closing twice must not free a second slot
+        responses.single().close()
+        assertEquals(1, dispatcher.activeRequests(RequestLane.PLAYBACK))
+    }
+
+    @Test
+    fun `the slot is released once the body was read to the end`() {
+        val dispatcher = RestDispatcher(1, emptyMap())
+
+        val first = dispatcher.enqueue(RequestLane.PLAYBACK, "first")
+        dispatcher.enqueue(RequestLane.PLAYBACK, "second")
+
+        first.respond("some body")
+        val source = responses.single().body!!.source()
+
+        source.readUtf8(4)
+        assertEquals(listOf("first"), names())
+
+        assertEquals(" body", source.readUtf8())
+        assertEquals(listOf("first", "second"), names())
+    }
+
+    @Test
+    fun `waiting requests age past higher lanes`() {
+        val dispatcher = RestDispatcher(1, emptyMap(), queueAgingMs = 200)
+
+        var running = dispatcher.enqueue(RequestLane.VOICE, "voice0")
+        dispatcher.enqueue(RequestLane.LOADING, "load")
+
+        // A steady stream of voice updates that would otherwise always go first
+        for (i in 1..3) {
+            dispatcher.enqueue(RequestLane.VOICE, "voice$i")
+            running.fail()
+            running = started.last()
+        }
+        assertFalse("load" in names())
+
+        Thread.sleep(250)
+        dispatcher.enqueue(RequestLane.VOICE, "voice4")
+        running.fail()
+
+        assertEquals("load", names().last())
+        assertTrue(dispatcher.maxQueueTimeNanos(RequestLane.LOADING) >= 200_000_000)
+    }
+
+    @Test
+    fun `cancelled waiting requests fail without taking a slot`() {
+        val dispatcher = RestDispatcher(1, emptyMap())
+
+        val running = dispatcher.enqueue(RequestLane.PLAYBACK, "running")
+        // Enough to overflow the stack if every cancelled request went through its own start and finish
+        repeat(100_000) { dispatcher.enqueue(RequestLane.PLAYBACK, "cancelled").cancel() }
+        dispatcher.enqueue(RequestLane.PLAYBACK, "next")
+
+        running.fail()
+
+        assertEquals(listOf("running", "next"), names())
+        assertEquals(100_001, failures.size)
+        assertEquals(1, dispatcher.activeRequests(RequestLane.PLAYBACK))
+        assertEquals(2, dispatcher.dispatchedRequests(RequestLane.PLAYBACK))
+    }
+
+    @Test
+    fun `closing fails waiting requests`() {
+        val dispatcher = RestDispatcher(1, emptyMap())
+
+        val running = dispatcher.enqueue(RequestLane.PLAYBACK, "running")
+        val waiting = dispatcher.enqueue(RequestLane.LOADING, "waiting")
+
+        dispatcher.close()
+        val late = dispatcher.enqueue(RequestLane.VOICE, "late")
+
+        assertEquals(listOf("waiting", "late"), failures.map { it.first })
+        assertTrue(waiting.isCanceled() && late.isCanceled())
+        assertFalse(running.isCanceled())
+        assertEquals(0, dispatcher.queuedRequests(RequestLane.LOADING))
+
+        // The running request is cancelled on the http client, which must not start anything else
+        running.fail()
+        assertEquals(listOf("running"), names())
+        assertEquals(0, dispatcher.activeRequests(RequestLane.PLAYBACK))
+    }
+}
@@ -0,0 +1,52 @@
+package dev.arbjerg.lavalink.internal
+
+import com.sun.net.httpserver.HttpServer
+import dev.arbjerg.lavalink.addOfflineNode
+import dev.arbjerg.lavalink.addTestNode
+import dev.arbjerg.lavalink.client.LavalinkClient
+import java.net.InetSocketAddress
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+
+class RestLatencyTest {
+    private val client = LavalinkClient(1L)
+    private val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    private val release = CountDownLatch(1)
+
+    @AfterTest
+    fun close() {
+        release.countDown()
+        client.close()
+        server.stop(0)
+    }
+
+    @Test
+    fun `timed out requests count as the whole timeout`() {
+        server.createContext("/v4/info") {
+            release.await(5, TimeUnit.SECONDS)
+            it.sendResponseHeaders(500, -1)
+            it.close()
+        }
+        server.start()
+
+        val node = client.addTestNode("http://127.0.0.1:${server.address.port}") { setHttpTimeout(200) }
+
+        assertFailsWith<ExecutionException> { node.rest.getNodeInfo().toFuture().get(5, TimeUnit.SECONDS) }
+
+        assertEquals(200L, node.restLatencyMillis)
+    }
+
+    @Test
+    fun `refused connections are not measured`() {
+        val node = client.addOfflineNode()
+
+        assertFailsWith<ExecutionException> { node.rest.getNodeInfo().toFuture().get(5, TimeUnit.SECONDS) }
+
+        assertEquals(-1L, node.restLatencyMillis)
+    }
+}
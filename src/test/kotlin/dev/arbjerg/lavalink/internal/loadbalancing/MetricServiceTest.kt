@@ -0,0 +1,84 @@
+package dev.arbjerg.lavalink.internal.loadbalancing
+
+import dev.arbjerg.lavalink.internal.METRIC_MAX_HISTORY
+import kotlin.test.Test
+import kotlin.test.assertEquals
+
+class MetricServiceTest {
+    private var minute = 0L
+
+    private fun service(start: Long): MetricService {
+        minute = start
+        return MetricService { minute * 60_000 }
+    }
+
+    private fun MetricService.stuck() = getCurrentMetrics()[MetricType.TRACK_STUCK]
+
+    private fun MetricService.track(count: Int) = repeat(count) { trackMetric(MetricType.TRACK_STUCK) }
+
+    @Test
+    fun `counts stay in the window`() {
+        val metrics = service(1000)
+
+        metrics.track(3)
+        minute += 1
+        metrics.track(2)
+        minute += METRIC_MAX_HISTORY - 2
+        assertEquals(5, metrics.stuck())
+
+        minute += 1
+        assertEquals(2, metrics.stuck())
+
+        minute += 1
+        assertEquals(0, metrics.stuck())
+    }
+
+    @Test
+    fun `counts expire after an idle gap longer than the window`() {
+        val metrics = service(950)
+
+        metrics.track(5)
+        minute = 1000
+        metrics.track(7)
+        minute = 1001
+        assertEquals(12, metrics.stuck())
+
+        minute = 1200
+        assertEquals(0, metrics.stuck())
+
+        metrics.track(1)
+        minute = 1201
+        assertEquals(1, metrics.stuck())
+
+        minute = 1400
+        assertEquals(0, metrics.stuck())
+    }
+
+    @Test
+    fun `counts expire after a gap shorter than the window`() {
+        val metrics = service(950)
+
+        metrics.track(5)
+        minute = 1000
+        metrics.track(7)
+        minute = 1051
+        assertEquals(7, metrics.stuck())
+
+        minute = 1101
+        assertEquals(0, metrics.stuck())
+    }
+
+    @Test
+    fun `slots are not overwritten without being expired`() {
+        val metrics = service(1000)
+
+        metrics.track(4)
+        minute += METRIC_MAX_HISTORY
+        metrics.track(1)
+        minute += 1
+        assertEquals(1, metrics.stuck())
+
+        minute += METRIC_MAX_HISTORY
+        assertEquals(0, metrics.stuck())
+    }
+}